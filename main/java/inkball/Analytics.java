@@ -0,0 +1,272 @@
+package inkball;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class Analytics {
+
+    private TreeMap<Integer, Heatmap> levels = new TreeMap<>();
+
+    /**
+     * Gets the heatmap of a level, creating an empty one the first time the level is played.
+     * @param level the level
+     * @return the heatmap
+     */
+    public synchronized Heatmap level(int level) {
+        return levels.computeIfAbsent(level, l -> new Heatmap(Game.ROWS, Game.COLS));
+    }
+
+    /**
+     * Adds the counts of other analytics to these, for example when a game session finishes on a server. The
+     * other analytics must not be counting at the same time.
+     * @param other the analytics to add
+     */
+    public synchronized void merge(Analytics other) {
+        for (Map.Entry<Integer, Heatmap> entry : other.levels.entrySet()) {
+            level(entry.getKey()).merge(entry.getValue());
+        }
+    }
+
+    /**
+     * Saves the heatmap of every level to a directory, added to the counts already saved there so the files
+     * cover every game played. Each level has a file of counts, level0.heat onwards, and an image of each kind of
+     * count, such as level0-traffic.png.
+     * @param directory the directory to save to
+     */
+    public synchronized void save(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        for (Map.Entry<Integer, Heatmap> entry : levels.entrySet()) {
+            File file = new File(directory, "level" + entry.getKey() + ".heat");
+            Heatmap total = new Heatmap(Game.ROWS, Game.COLS);
+            if (file.exists()) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    total.merge(Heatmap.read(in));
+                }
+            }
+            total.merge(entry.getValue());
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                total.write(out);
+            }
+            for (int kind = 0; kind < Heatmap.KINDS.length; kind++) {
+                File image = new File(directory, "level" + entry.getKey() + "-" + Heatmap.KINDS[kind] + ".png");
+                ImageIO.write(total.image(kind, 16), "png", image);
+            }
+        }
+    }
+
+    /**
+     * Prints the cells of a saved heatmap with the highest counts of each kind. The argument is the heatmap file.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        Heatmap heatmap;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])))) {
+            heatmap = Heatmap.read(in);
+        }
+        for (int kind = 0; kind < Heatmap.KINDS.length; kind++) {
+            int[] counts = heatmap.counts(kind);
+            StringBuilder line = new StringBuilder(Heatmap.KINDS[kind] + ":");
+            boolean[] shown = new boolean[counts.length];
+            for (int n = 0; n < 5; n++) {
+                int best = -1;
+                for (int cell = 0; cell < counts.length; cell++) {
+                    if (!shown[cell] && counts[cell] > 0 && (best == -1 || counts[cell] > counts[best])) {
+                        best = cell;
+                    }
+                }
+                if (best == -1) {
+                    break;
+                }
+                shown[best] = true;
+                line.append(String.format("  (%d,%d) %d", best % heatmap.cols, best / heatmap.cols, counts[best]));
+            }
+            System.out.println(line);
+        }
+    }
+}
+
+
+class Heatmap {
+
+    static final String[] KINDS = {"traffic", "bounces", "walls", "holes"};
+    static final int TRAFFIC = 0; //Ticks a ball spent moving through the cell
+    static final int BOUNCES = 1; //Times a ball bounced off a line in the cell
+    static final int WALLS = 2; //Times the wall in the cell was hit
+    static final int HOLES = 3; //Ticks a ball spent in the cell while being pulled into a hole
+    private static final int MAGIC = 0x494e4b48; //"INKH"
+
+    final int rows;
+    final int cols;
+    private int[][] counts;
+
+    /**
+     * Constructor that creates a heatmap with every count at zero. Counts are kept per cell of the board in
+     * plain arrays, so counting is an array increment and a heatmap of a level is a few kilobytes.
+     * @param rows the number of rows of the board
+     * @param cols the number of columns of the board
+     */
+    public Heatmap(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.counts = new int[KINDS.length][rows * cols];
+    }
+
+    /**
+     * Gets the cell a point is in, keeping points just off the board in the nearest cell.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the index of the cell
+     */
+    private int cell(float x, float y) {
+        int col = Math.max(0, Math.min(cols-1, (int) (x / App.CELLSIZE)));
+        int row = Math.max(0, Math.min(rows-1, (int) ((y - App.TOPBAR) / App.CELLSIZE)));
+        return row*cols + col;
+    }
+
+    /**
+     * Counts a tick of a ball moving.
+     * @param ball the ball, after it has moved
+     */
+    public void travel(Ball ball) {
+        counts[TRAFFIC][cell(ball.centrePosition.x, ball.centrePosition.y)]++;
+    }
+
+    /**
+     * Counts the ticks of a ball moving in a straight line without touching anything, as the event-driven
+     * simulation does. Every tick starts by restoring the ball's normal speed, so it moves the same number of
+     * pixels each tick in the direction of its velocity, as in the simulation's predictions.
+     * @param ball the ball, before it has moved
+     * @param ticks the number of ticks it moves for
+     */
+    public void travel(Ball ball, int ticks) {
+        float x = ball.centrePosition.x;
+        float y = ball.centrePosition.y;
+        float speed = 2f / App.FPS * App.CELLSIZE; //Pixels moved per tick
+        float vx = ball.getVelocity().x < 0 ? -speed : speed;
+        float vy = ball.getVelocity().y < 0 ? -speed : speed;
+        for (int i = 1; i <= ticks; i++) {
+            counts[TRAFFIC][cell(x + vx*i, y + vy*i)]++;
+        }
+    }
+
+    /**
+     * Counts a ball bouncing off a line.
+     * @param ball the ball
+     */
+    public void lineBounce(Ball ball) {
+        counts[BOUNCES][cell(ball.centrePosition.x, ball.centrePosition.y)]++;
+    }
+
+    /**
+     * Counts a hit on a wall.
+     * @param wall the wall
+     */
+    public void wallHit(Wall wall) {
+        counts[WALLS][wall.getRow()*cols + wall.getCol()]++;
+    }
+
+    /**
+     * Counts a tick of a ball being pulled into a hole.
+     * @param ball the ball
+     */
+    public void holeZone(Ball ball) {
+        counts[HOLES][cell(ball.centrePosition.x, ball.centrePosition.y)]++;
+    }
+
+    /**
+     * Gets the counts of one kind.
+     * @param kind the kind of count, such as TRAFFIC
+     * @return the count of each cell, by row then column
+     */
+    public int[] counts(int kind) {
+        return counts[kind];
+    }
+
+    /**
+     * Adds the counts of another heatmap to this one.
+     * @param other the heatmap to add, which must be the same size
+     */
+    public void merge(Heatmap other) {
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            for (int cell = 0; cell < counts[kind].length; cell++) {
+                counts[kind][cell] += other.counts[kind][cell];
+            }
+        }
+    }
+
+    /**
+     * Writes the heatmap to a stream.
+     * @param out the stream to write to
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(rows);
+        out.writeShort(cols);
+        out.writeByte(KINDS.length);
+        for (int[] kind : counts) {
+            for (int count : kind) {
+                out.writeInt(count);
+            }
+        }
+    }
+
+    /**
+     * Reads a heatmap from a stream.
+     * @param in the stream to read from
+     * @return the heatmap
+     */
+    public static Heatmap read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a heatmap");
+        }
+        Heatmap heatmap = new Heatmap(in.readShort(), in.readShort());
+        if (in.readByte() != KINDS.length) {
+            throw new IOException("Heatmap has different kinds of count");
+        }
+        for (int[] kind : heatmap.counts) {
+            for (int cell = 0; cell < kind.length; cell++) {
+                kind[cell] = in.readInt();
+            }
+        }
+        return heatmap;
+    }
+
+    /**
+     * Draws one kind of count as an image, from black for no count through red and yellow to white for the
+     * highest. Counts are scaled logarithmically so quiet cells still show.
+     * @param kind the kind of count
+     * @param scale the size of each cell in pixels
+     * @return the image
+     */
+    public BufferedImage image(int kind, int scale) {
+        int max = 0;
+        for (int count : counts[kind]) {
+            max = Math.max(max, count);
+        }
+        double top = Math.log1p(max);
+
+        BufferedImage image = new BufferedImage(cols * scale, rows * scale, BufferedImage.TYPE_INT_RGB);
+        for (int cell = 0; cell < counts[kind].length; cell++) {
+            double heat = max == 0 ? 0 : Math.log1p(counts[kind][cell]) / top;
+            int red = (int) Math.min(255, heat * 3 * 255);
+            int green = (int) Math.max(0, Math.min(255, (heat * 3 - 1) * 255));
+            int blue = (int) Math.max(0, Math.min(255, (heat * 3 - 2) * 255));
+            int rgb = red << 16 | green << 8 | blue;
+
+            int x = (cell % cols) * scale;
+            int y = (cell / cols) * scale;
+            for (int i = 0; i < scale; i++) {
+                for (int i2 = 0; i2 < scale; i2++) {
+                    image.setRGB(x + i2, y + i, rgb);
+                }
+            }
+        }
+        return image;
+    }
+}
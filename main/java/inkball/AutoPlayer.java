@@ -0,0 +1,322 @@
+package inkball;
+
+import processing.core.PVector;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class AutoPlayer {
+
+    static final int HORIZON = 150; //Ticks each rollout plays forward (5 seconds)
+    private static final int ROLLOUTS = 4; //Rollouts per candidate stroke, each with different spawns
+    private static final int PLAN_INTERVAL = 15; //Ticks between plans
+    private static final int MAX_LINES = 6; //No more lines are planned while this many are on the board
+    private static final int MAX_BALLS = 3; //Balls candidate strokes are planned for
+    private static final float[] DISTANCES = {40, 80, 120}; //Distances ahead of a ball to place a stroke
+    private static final float HALF_LENGTH = 32;
+    private static final float MIN_GAIN = 1; //Score a stroke must gain over drawing nothing
+    static final int CHECK_EVERY = 30; //Ticks between checks for cancellation in a rollout
+
+    private Game game;
+    private InputQueue input;
+    private ExecutorService pool;
+    private long budgetNanos;
+    private Random random;
+    private ArrayDeque<float[][]> pending = new ArrayDeque<>(); //Input events to send, grouped by frame
+    private int ticksUntilPlan = 0;
+    private long rollouts = 0;
+    private long rolloutTicks = 0;
+    private long cancelled = 0;
+
+    /**
+     * Constructor that creates a player that draws lines on its own. Strokes are sent through the same input
+     * queue as the mouse, so the game cannot tell them apart from a person playing.
+     * @param game the game to play
+     * @param input the input queue of the game
+     * @param pool the threads rollouts are run on
+     * @param budgetMillis the longest time a plan may take, which should fit within a frame
+     */
+    public AutoPlayer(Game game, InputQueue input, ExecutorService pool, long budgetMillis) {
+        this.game = game;
+        this.input = input;
+        this.pool = pool;
+        this.budgetNanos = budgetMillis * 1_000_000L;
+        this.random = new Random(game.seed);
+    }
+
+    /**
+     * Called once per frame on the game thread before the input queue is drained. It sends the next part of a
+     * planned stroke, or plans a new stroke every few ticks.
+     */
+    public void update() {
+        if (!pending.isEmpty()) {
+            for (float[] event : pending.poll()) {
+                input.offer((int) event[0], event[1], event[2]);
+            }
+            return;
+        }
+
+        if (game.paused || game.levelEnded || game.balls.isEmpty() || game.lines.size() >= MAX_LINES) {
+            return;
+        }
+        if (--ticksUntilPlan > 0) {
+            return;
+        }
+        ticksUntilPlan = PLAN_INTERVAL;
+
+        float[] stroke = plan();
+        if (stroke != null) {
+            //Press and start dragging on one frame, finish the drag and release on the next, like a mouse
+            pending.add(new float[][] {{InputQueue.BEGIN_LINE, stroke[0], stroke[1]}, {InputQueue.DRAG_LINE, stroke[0], stroke[1]}});
+            pending.add(new float[][] {{InputQueue.DRAG_LINE, stroke[2], stroke[3]}, {InputQueue.END_LINE, stroke[2], stroke[3]}});
+        }
+    }
+
+    /**
+     * Finds the best stroke to draw. Every candidate is tried in several rollouts run in parallel, each playing a
+     * copy of the game forward with the stroke drawn. The game is only copied once here, and each rollout makes
+     * its own copy of that snapshot on its thread. Rollouts still running when the time budget runs out are
+     * cancelled and their candidates are judged on the rollouts that finished.
+     * @return the start and end of the best stroke, or null if no stroke is better than drawing nothing
+     */
+    public float[] plan() {
+        long deadline = System.nanoTime() + budgetNanos;
+        List<float[]> candidates = candidates();
+        candidates.add(0, null); //Drawing nothing, to compare the strokes against
+
+        //Every candidate is tried with the same spawns so only the stroke makes a difference
+        long[] seeds = new long[ROLLOUTS];
+        for (int r = 0; r < ROLLOUTS; r++) {
+            seeds[r] = random.nextLong();
+        }
+
+        float[] totals = new float[candidates.size()];
+        int[] counts = new int[candidates.size()];
+        CompletionService<float[]> results = new ExecutorCompletionService<>(pool);
+        ArrayList<Future<float[]>> futures = new ArrayList<>();
+        Rollout.Cancel cancel = new Rollout.Cancel();
+
+        //The snapshot is made here since the game must not change while it is copied. It is never played, so it
+        //needs no generator for spawns
+        Game snapshot = game.copy(null);
+        for (int i = 0; i < candidates.size(); i++) {
+            for (int r = 0; r < ROLLOUTS; r++) {
+                Rollout rollout = new Rollout(snapshot, seeds[r], candidates.get(i), i, cancel);
+                futures.add(results.submit(rollout));
+            }
+        }
+
+        //Collect results until every rollout is done or the budget runs out
+        int received = 0;
+        try {
+            while (received < futures.size()) {
+                long left = deadline - System.nanoTime();
+                Future<float[]> done = left > 0 ? results.poll(left, TimeUnit.NANOSECONDS) : null;
+                if (done == null) {
+                    break;
+                }
+                received++;
+                float[] result = done.get();
+                if (result != null) {
+                    int index = (int) result[0];
+                    totals[index] += result[1];
+                    counts[index]++;
+                    rollouts++;
+                    rolloutTicks += HORIZON;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            System.err.println("Rollout failed: " + e.getCause());
+        }
+        finally {
+            cancel.cancelled = true;
+            for (Future<float[]> future : futures) {
+                if (future.cancel(false)) {
+                    cancelled++;
+                }
+            }
+        }
+
+        if (counts[0] == 0) {
+            return null; //Nothing to compare against
+        }
+        float baseline = totals[0] / counts[0];
+        float best = baseline + MIN_GAIN;
+        float[] bestStroke = null;
+        for (int i = 1; i < candidates.size(); i++) {
+            if (counts[i] > 0 && totals[i] / counts[i] > best) {
+                best = totals[i] / counts[i];
+                bestStroke = candidates.get(i);
+            }
+        }
+        return bestStroke;
+    }
+
+    /**
+     * Creates candidate strokes ahead of the balls closest to a hole. Each stroke is a short straight line at
+     * a few distances along the ball's path and at four angles.
+     * @return the start and end of each candidate stroke
+     */
+    private List<float[]> candidates() {
+        ArrayList<Ball> targets = new ArrayList<>(game.balls);
+        targets.sort(Comparator.comparingDouble(this::distanceToHole));
+
+        ArrayList<float[]> candidates = new ArrayList<>();
+        for (int b = 0; b < Math.min(MAX_BALLS, targets.size()); b++) {
+            Ball ball = targets.get(b);
+            PVector direction = ball.getVelocity().normalize();
+
+            for (float distance : DISTANCES) {
+                float cx = ball.centrePosition.x + direction.x * distance;
+                float cy = ball.centrePosition.y + direction.y * distance;
+                for (int angle = 0; angle < 4; angle++) {
+                    float dx = (float) Math.cos(angle * Math.PI / 4) * HALF_LENGTH;
+                    float dy = (float) Math.sin(angle * Math.PI / 4) * HALF_LENGTH;
+                    float[] stroke = {cx - dx, cy - dy, cx + dx, cy + dy};
+                    if (onBoard(stroke[0], stroke[1]) && onBoard(stroke[2], stroke[3])) {
+                        candidates.add(stroke);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Gets the distance from a ball to the nearest hole it would score in.
+     * @param ball the ball
+     * @return the distance in pixels
+     */
+    private double distanceToHole(Ball ball) {
+        double nearest = Double.MAX_VALUE;
+        for (Hole hole : game.holes) {
+            if (hole.getColour() == 0 || !ball.isColoured() || hole.getColour() == ball.getColour()) {
+                nearest = Math.min(nearest, PVector.dist(ball.centrePosition, hole.centrePosition));
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Checks if a point is on the board, below the top bar.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return true if on the board
+     */
+    private static boolean onBoard(float x, float y) {
+        return x >= 0 && x < App.WIDTH && y >= App.TOPBAR && y < App.HEIGHT;
+    }
+
+    public long getRollouts() {
+        return this.rollouts;
+    }
+
+    public long getRolloutTicks() {
+        return this.rolloutTicks;
+    }
+
+    public long getCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Plays a level headlessly with the automatic player and reports how fast the rollouts ran, which is a
+     * benchmark of the physics. Arguments are the configuration file, the level number, the number of ticks,
+     * the number of threads and the planning budget in milliseconds.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        String configPath = args.length > 0 ? args[0] : "config.json";
+        int level = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 60 * App.FPS;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long budget = args.length > 4 ? Long.parseLong(args[4]) : 20;
+
+        Game game = new Game(Config.load(configPath), 0);
+        game.currentLevel = level;
+        game.resetGame();
+        InputQueue input = new InputQueue();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AutoPlayer player = new AutoPlayer(game, input, pool, budget);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks && !game.gameEnded; i++) {
+            player.update();
+            input.drain(game);
+            game.tick();
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdownNow();
+
+        double seconds = elapsed / 1e9;
+        System.out.println("Score: " + (int) game.getScore() + ", level: " + game.currentLevel + ", captures: "
+            + game.getCaptures() + ", wrong captures: " + game.getWrongCaptures());
+        System.out.println(String.format("%d rollouts (%d cancelled) in %.2fs: %.0f rollouts/s, %.0f simulated ticks/s",
+            player.getRollouts(), player.getCancelled(), seconds, player.getRollouts() / seconds, player.getRolloutTicks() / seconds));
+    }
+}
+
+
+class Rollout implements Callable<float[]> {
+
+    private Game snapshot;
+    private long seed;
+    private float[] stroke;
+    private int candidate;
+    private Cancel cancel;
+
+    /**
+     * Constructor that sets up one rollout of a candidate stroke.
+     * @param snapshot the copy of the game taken for the plan, which is copied again and never changed
+     * @param seed the seed of the spawns in the rollout
+     * @param stroke the start and end of the stroke, or null to draw nothing
+     * @param candidate the index of the candidate being tried
+     * @param cancel the flag set when the plan no longer needs the result
+     */
+    public Rollout(Game snapshot, long seed, float[] stroke, int candidate, Cancel cancel) {
+        this.snapshot = snapshot;
+        this.seed = seed;
+        this.stroke = stroke;
+        this.candidate = candidate;
+        this.cancel = cancel;
+    }
+
+    /**
+     * Copies the snapshot, draws the stroke on the copy and plays it forward with the event-driven simulation.
+     * @return the candidate index and the score gained, or null if cancelled
+     */
+    @Override
+    public float[] call() {
+        if (cancel.cancelled) {
+            return null;
+        }
+        Game game = snapshot.copy(new Random(seed));
+        if (stroke != null) {
+            game.beginLine(stroke[0], stroke[1]);
+            game.dragLine(stroke[0], stroke[1]);
+            game.dragLine(stroke[2], stroke[3]);
+            game.endLine(stroke[2], stroke[3]);
+        }
+
+        float startScore = game.getScore();
+        EventSimulator simulator = new EventSimulator(game);
+        for (int played = 0; played < AutoPlayer.HORIZON && !game.levelEnded; ) {
+            if (cancel.cancelled) {
+                return null;
+            }
+            int ran = simulator.run(Math.min(AutoPlayer.CHECK_EVERY, AutoPlayer.HORIZON - played));
+            if (ran == 0) {
+                break;
+            }
+            played += ran;
+        }
+        return new float[] {candidate, game.getScore() - startScore};
+    }
+
+    static class Cancel {
+        volatile boolean cancelled = false;
+    }
+}
@@ -14,6 +14,11 @@ public class Ball {
     public PVector centrePosition;
     private float size;
     public PVector tempVelocity = new PVector();
+    int generation = 0; //Times the ball has been reused from a pool
+    FixedBall fixed; //Physics state in integer fixed point, or null to use floats
+    private PVector scratch = new PVector(); //Working vectors for collisions, so they do not allocate
+    private PVector normal1 = new PVector();
+    private PVector normal2 = new PVector();
 
     /**
      * Constructor that sets the top left position, colour, size and centre position of a ball.
@@ -28,17 +33,96 @@ public class Ball {
         this.size = 24;
     }
 
+    /**
+     * Sets the ball up again as if it had just been created, for a ball taken from a pool.
+     * @param x the x position of the ball
+     * @param y the y position of the ball
+     * @param colour the colour of the ball
+     */
+    void reset(float x, float y, int colour) {
+        this.radius = 12;
+        this.size = 24;
+        this.colour = colour;
+        this.position.set(x, y);
+        this.centrePosition.set((this.position.x*App.CELLSIZE)+radius, (this.position.y*App.CELLSIZE+App.TOPBAR)+radius);
+        this.velocity = null;
+        this.acceleration.set(0, 0);
+        this.tempVelocity.set(0, 0);
+        this.fixed = null;
+        this.generation++;
+    }
+
+    /**
+     * Switches the ball to fixed point physics, where every movement, collision and hole pull is calculated with
+     * integers only so it gives the same result bit for bit on any machine. The floats of the ball are still
+     * kept up to date for drawing but are no longer used by the physics.
+     */
+    public void useFixedPoint() {
+        fixed = new FixedBall(position, size, velocity);
+        syncFixed();
+    }
+
+    public boolean isFixedPoint() {
+        return this.fixed != null;
+    }
+
+    /**
+     * Copies the fixed point state into the floats of the ball.
+     */
+    private void syncFixed() {
+        position.set(FixedPoint.toFloat(fixed.x) / App.CELLSIZE, (FixedPoint.toFloat(fixed.y) - App.TOPBAR) / App.CELLSIZE);
+        centrePosition.set(FixedPoint.toFloat(fixed.cx), FixedPoint.toFloat(fixed.cy));
+        if (velocity == null) {
+            velocity = new PVector();
+        }
+        velocity.set(FixedPoint.toFloat(fixed.vx) / App.CELLSIZE, FixedPoint.toFloat(fixed.vy) / App.CELLSIZE);
+        size = FixedPoint.toFloat(fixed.size);
+        radius = size/2;
+    }
+
     /**
      * Draws the relevant ball image based on its colour and position
      * @param app an object of the App class
      */
     public void draw(App app) {
-        PImage ball = app.getSprite("ball"+String.valueOf(colour));
+        PImage ball = app.getSprite(app.getColours().ballSprites[colour]);
         app.image(ball, this.position.x*App.CELLSIZE, this.position.y*App.CELLSIZE+App.TOPBAR, this.size, this.size);
     }
 
     public void setVelocity(float vx, float vy) {
-        this.velocity = new PVector(vx/(float) App.FPS, vy/(float) App.FPS);
+        if (this.velocity == null) {
+            this.velocity = new PVector();
+        }
+        this.velocity.set(vx/(float) App.FPS, vy/(float) App.FPS);
+        if (fixed != null) {
+            fixed.setVelocity(vx, vy);
+            syncFixed();
+        }
+    }
+
+    /**
+     * Stops the ball, keeping its velocity to continue with when it is released.
+     */
+    public void hold() {
+        if (fixed != null) {
+            fixed.hold();
+            syncFixed();
+            return;
+        }
+        tempVelocity = getVelocity();
+        setVelocity(0, 0);
+    }
+
+    /**
+     * Sets the ball moving again with the velocity it had when it was held.
+     */
+    public void release() {
+        if (fixed != null) {
+            fixed.release();
+            syncFixed();
+            return;
+        }
+        setVelocity(tempVelocity.x, tempVelocity.y);
     }
 
     public PVector getVelocity() {
@@ -52,12 +136,35 @@ public class Ball {
      * @return true if collided, false otherwise
      */
     public boolean checkWallCollision(Wall wall) {
-        //Get tile boundaries
-        double tileLeft = wall.getLeft();
-        double tileRight = wall.getRight();
-        double tileTop = wall.getTop();
-        double tileBottom = wall.getBottom();
+        return checkWallCollision(wall.getLeft(), wall.getTop(), wall.getRight(), wall.getBottom());
+    }
     
+    /**
+     * Checks if the ball has collided with a merged rectangle of walls and updates velocity if it has.
+     * @param rect rectangle of walls to check collision with
+     * @return true if collided, false otherwise
+     */
+    public boolean checkWallCollision(WallRect rect) {
+        return checkWallCollision(rect.getLeft(), rect.getTop(), rect.getRight(), rect.getBottom());
+    }
+
+    /**
+     * Checks if the ball has collided with a rectangle given its boundaries and updates velocity if it has.
+     * @param tileLeft the left x coordinate of the rectangle
+     * @param tileTop the top y coordinate of the rectangle
+     * @param tileRight the right x coordinate of the rectangle
+     * @param tileBottom the bottom y coordinate of the rectangle
+     * @return true if collided, false otherwise
+     */
+    private boolean checkWallCollision(double tileLeft, double tileTop, double tileRight, double tileBottom) {
+        if (fixed != null) {
+            boolean collided = fixed.checkWallCollision(tileLeft, tileTop, tileRight, tileBottom);
+            if (collided) {
+                syncFixed();
+            }
+            return collided;
+        }
+
         //Calculate the closest point on the tile to the center of the ball
         float closestX = clamp(centrePosition.x, (float) tileLeft, (float) tileRight);
         float closestY = clamp(centrePosition.y, (float) tileTop, (float) tileBottom);
@@ -123,6 +230,13 @@ public class Ball {
      * @return true if collided, false otherwise
      */
     public boolean checkLineCollision(ArrayList<PVector> hitbox) {
+        if (fixed != null) {
+            boolean collided = fixed.checkLineCollision(hitbox);
+            if (collided) {
+                syncFixed();
+            }
+            return collided;
+        }
         for (int i = 0; i < hitbox.size()-1; i++) {
             //Get two consecutive points on the line
             PVector p1 = hitbox.get(i);
@@ -147,6 +261,13 @@ public class Ball {
      * @return true if collided, false otherwise
      */
     public boolean checkBoundaryCollision() {
+        if (fixed != null) {
+            boolean collided = fixed.checkBoundaryCollision();
+            if (collided) {
+                syncFixed();
+            }
+            return collided;
+        }
         boolean collided = false;
 
         //Reflect across vertical boundary
@@ -164,6 +285,34 @@ public class Ball {
         return collided;
     }
 
+    /**
+     * Checks if the ball is close enough to any hole to be pulled by it.
+     * @param holes a list of all the holes to check proximity with
+     * @return true if it is within 32 pixels of a hole, false otherwise
+     */
+    public boolean isNearHole(ArrayList<Hole> holes) {
+        if (fixed != null) {
+            return fixed.isNearHole(holes);
+        }
+        for (Hole hole : holes) {
+            float distance = PVector.dist(this.centrePosition, hole.centrePosition);
+            if (distance <= 32) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves a fixed point ball for a number of ticks in which it touches nothing, as the event-driven
+     * simulation does. With integers this is exactly the same as moving it one tick at a time.
+     * @param ticks the number of ticks
+     */
+    void skip(int ticks) {
+        fixed.skip(ticks);
+        syncFixed();
+    }
+
     /**
      * Checks if the ball is within the bounds of a hole and if it is, updates its velocity accordingly. If
      * it gets absorbed, it returns the colour of the hole it got absorbed by. It returns -1 if not captured
@@ -172,6 +321,11 @@ public class Ball {
      * @return colour if captured, -1 otherwise
      */
     public int checkHoleCapture(ArrayList<Hole> holes) {
+        if (fixed != null) {
+            int colour = fixed.checkHoleCapture(holes);
+            syncFixed();
+            return colour;
+        }
         for (Hole hole : holes) {
             //Calculate distance between ball and hole
             float distance = PVector.dist(this.centrePosition, hole.centrePosition);
@@ -192,6 +346,11 @@ public class Ball {
      * Updates the position of the ball based on velocity.
      */
     public void update() {
+        if (fixed != null) {
+            fixed.update();
+            syncFixed();
+            return;
+        }
         this.position.add(this.velocity);
         centrePosition.set((this.position.x*App.CELLSIZE)+(size/2), (this.position.y*App.CELLSIZE+App.TOPBAR)+(size/2));
     }
@@ -202,7 +361,7 @@ public class Ball {
      */
     public void updateHole(Hole hole) {
         //Get the vector between the ball and hole and its magnitude
-        PVector ballHoleVector = PVector.sub(hole.centrePosition, this.centrePosition);
+        PVector ballHoleVector = scratch.set(hole.centrePosition).sub(this.centrePosition);
         float distance = ballHoleVector.mag();
 
         //Calculate the force to pull the ball with (maximum of 9%), using the gravity effect
@@ -226,6 +385,11 @@ public class Ball {
      * Restores the normal size and velocity of the ball when out of bounds of hole.
      */
     public void restoreSize() {
+        if (fixed != null) {
+            fixed.restoreSize();
+            syncFixed();
+            return;
+        }
         //Set the magnitude of the x component of the velocity to 2
         if (velocity.x < 0) {
             velocity.x = -2/(float) App.FPS;
@@ -260,14 +424,14 @@ public class Ball {
         float dy = p2.y - p1.y;
 
         //Calculate the 2 possible normals
-        PVector n1 = new PVector(-dy, dx).normalize();
-        PVector n2 = new PVector(dy, -dx).normalize();
+        PVector n1 = normal1.set(-dy, dx).normalize();
+        PVector n2 = normal2.set(dy, -dx).normalize();
 
-        PVector midpoint = PVector.lerp(p1, p2, 0.5f); //Calculate midpoint of line
+        PVector midpoint = scratch.set(p1).lerp(p2, 0.5f); //Calculate midpoint of line
 
         //Calculate distance from each normal to the ball
-        float dist1 = PVector.dist(PVector.add(midpoint, n1), centrePosition);
-        float dist2 = PVector.dist(PVector.add(midpoint, n2), centrePosition);
+        float dist1 = dist(midpoint.x + n1.x, midpoint.y + n1.y, centrePosition);
+        float dist2 = dist(midpoint.x + n2.x, midpoint.y + n2.y, centrePosition);
         
         //Return the closer normal
         if (dist1 < dist2) {
@@ -283,8 +447,21 @@ public class Ball {
     private void reflect(PVector normal) {
         //Calculate new velocity using the dot product of the normal and velocity of the ball
         float dotProduct = PVector.dot(velocity, normal);
-        PVector newVelocity = PVector.sub(velocity, PVector.mult(normal, 2*dotProduct));
-        this.velocity = newVelocity;
+        float scale = 2*dotProduct;
+        velocity.set(velocity.x - normal.x*scale, velocity.y - normal.y*scale);
+    }
+
+    /**
+     * Calculates the distance between a point and the centre of the ball the same way PVector.dist() does.
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @param centre the centre of the ball
+     * @return the distance
+     */
+    private static float dist(float x, float y, PVector centre) {
+        float dx = x - centre.x;
+        float dy = y - centre.y;
+        return (float) Math.sqrt(dx*dx + dy*dy);
     }
 
     public void setColour(int colour) {
@@ -305,4 +482,52 @@ public class Ball {
     public int getColour() {
         return this.colour;
     }
+
+    /**
+     * Creates a copy of the ball that moves independently of it.
+     * @return the copy
+     */
+    public Ball copy() {
+        Ball ball = new Ball(this.position.x, this.position.y, this.colour);
+        ball.velocity = this.velocity.copy();
+        ball.acceleration = this.acceleration.copy();
+        ball.radius = this.radius;
+        ball.centrePosition = this.centrePosition.copy();
+        ball.size = this.size;
+        ball.tempVelocity = this.tempVelocity.copy();
+        ball.generation = this.generation;
+        ball.fixed = this.fixed != null ? this.fixed.copy() : null;
+        return ball;
+    }
+
+    public float getSize() {
+        return this.size;
+    }
+
+    /**
+     * Copies the position, velocity per tick and size of the ball into a batch.
+     * @param batch the batch to copy into
+     * @param i the index of the ball in the batch
+     */
+    void writeTo(BallBatch batch, int i) {
+        batch.x[i] = position.x;
+        batch.y[i] = position.y;
+        batch.vx[i] = velocity.x;
+        batch.vy[i] = velocity.y;
+        batch.size[i] = size;
+    }
+
+    /**
+     * Copies the position, velocity per tick and size of the ball back from a batch and updates its centre
+     * the same way update() does.
+     * @param batch the batch to copy from
+     * @param i the index of the ball in the batch
+     */
+    void readFrom(BallBatch batch, int i) {
+        position.set(batch.x[i], batch.y[i]);
+        velocity.set(batch.vx[i], batch.vy[i]);
+        size = batch.size[i];
+        radius = size/2;
+        centrePosition.set((this.position.x*App.CELLSIZE)+(size/2), (this.position.y*App.CELLSIZE+App.TOPBAR)+(size/2));
+    }
 }
@@ -0,0 +1,304 @@
+package inkball;
+
+import java.util.*;
+
+public class BallBatch {
+
+    public static final BatchKernel KERNEL = selectKernel();
+
+    public int count = 0;
+    public float[] x = new float[0];
+    public float[] y = new float[0];
+    public float[] vx = new float[0];
+    public float[] vy = new float[0];
+    public float[] size = new float[0];
+
+    /**
+     * Chooses the SIMD kernel if the Java Vector API is available at runtime, which needs the JVM to be started
+     * with --add-modules jdk.incubator.vector. Setting the inkball.simd system property to false forces the
+     * scalar kernel.
+     * @return the kernel to use
+     */
+    private static BatchKernel selectKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("inkball.simd", "true"))) {
+            return new ScalarKernel();
+        }
+        try {
+            return (BatchKernel) Class.forName("inkball.VectorKernel").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarKernel();
+        }
+    }
+
+    /**
+     * Copies the positions, velocities and sizes of a list of balls into the arrays of the batch.
+     * @param balls the balls to copy
+     */
+    public void load(List<Ball> balls) {
+        ensureCapacity(balls.size());
+        count = balls.size();
+        for (int i = 0; i < count; i++) {
+            balls.get(i).writeTo(this, i);
+        }
+    }
+
+    /**
+     * Copies the positions, velocities and sizes in the batch back into the balls they were loaded from.
+     * @param balls the balls to copy into, in the same order as they were loaded
+     */
+    public void store(List<Ball> balls) {
+        for (int i = 0; i < count; i++) {
+            balls.get(i).readFrom(this, i);
+        }
+    }
+
+    /**
+     * Creates a copy of the batch.
+     * @return the copy
+     */
+    public BallBatch copy() {
+        BallBatch copy = new BallBatch();
+        copy.count = count;
+        copy.x = x.clone();
+        copy.y = y.clone();
+        copy.vx = vx.clone();
+        copy.vy = vy.clone();
+        copy.size = size.clone();
+        return copy;
+    }
+
+    /**
+     * Checks if another batch holds exactly the same bits for every ball.
+     * @param other the batch to compare with
+     * @return true if identical, false otherwise
+     */
+    public boolean sameAs(BallBatch other) {
+        if (count != other.count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (Float.floatToRawIntBits(x[i]) != Float.floatToRawIntBits(other.x[i])
+                || Float.floatToRawIntBits(y[i]) != Float.floatToRawIntBits(other.y[i])
+                || Float.floatToRawIntBits(vx[i]) != Float.floatToRawIntBits(other.vx[i])
+                || Float.floatToRawIntBits(vy[i]) != Float.floatToRawIntBits(other.vy[i])
+                || Float.floatToRawIntBits(size[i]) != Float.floatToRawIntBits(other.size[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Grows the arrays of the batch so they can hold a number of balls.
+     * @param capacity the number of balls
+     */
+    private void ensureCapacity(int capacity) {
+        if (x.length < capacity) {
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            vx = Arrays.copyOf(vx, capacity);
+            vy = Arrays.copyOf(vy, capacity);
+            size = Arrays.copyOf(size, capacity);
+        }
+    }
+
+    /**
+     * Moves a batch of randomly placed balls around the board with both the chosen kernel and the scalar kernel
+     * and checks that the results are bit-identical, then prints how long each took over the second half of the
+     * rounds.
+     * Arguments are the number of balls, the number of rounds and the random seed.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        int balls = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+        Random random = new Random(seed);
+        BallBatch batch = new BallBatch();
+        batch.ensureCapacity(balls);
+        batch.count = balls;
+        for (int i = 0; i < balls; i++) {
+            batch.x[i] = random.nextFloat() * (Game.COLS - 1);
+            batch.y[i] = random.nextFloat() * (Game.ROWS - 1);
+            batch.vx[i] = random.nextBoolean() ? 2/(float) App.FPS : -2/(float) App.FPS;
+            batch.vy[i] = random.nextBoolean() ? 2/(float) App.FPS : -2/(float) App.FPS;
+            batch.size[i] = 24;
+        }
+        WallGrid grid = new WallGrid(Game.ROWS, Game.COLS);
+        grid.add(new Wall(8, 8, 0));
+        grid.build();
+        WallRect rect = grid.getRects().get(0);
+
+        BatchKernel scalar = new ScalarKernel();
+        BallBatch expected = batch.copy();
+        BallBatch actual = batch.copy();
+        boolean[] expectedHits = new boolean[balls];
+        boolean[] actualHits = new boolean[balls];
+        long scalarTime = 0;
+        long kernelTime = 0;
+
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            scalar.integrate(expected, 1);
+            scalar.reflectBoundaries(expected, expectedHits);
+            int expectedContacts = scalar.wallContacts(expected, rect, expectedHits);
+            scalarTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            KERNEL.integrate(actual, 1);
+            KERNEL.reflectBoundaries(actual, actualHits);
+            int actualContacts = KERNEL.wallContacts(actual, rect, actualHits);
+            kernelTime += System.nanoTime() - start;
+
+            //Only time the second half, once both kernels have been compiled
+            if (round < rounds/2) {
+                scalarTime = 0;
+                kernelTime = 0;
+            }
+
+            if (!expected.sameAs(actual) || expectedContacts != actualContacts || !Arrays.equals(expectedHits, actualHits)) {
+                throw new IllegalStateException("Kernel results differ from the scalar kernel in round " + round);
+            }
+        }
+
+        System.out.println("Kernel: " + KERNEL.getClass().getSimpleName() + ", results bit-identical to scalar");
+        System.out.println("Scalar: " + (scalarTime / 1000) + " us, kernel: " + (kernelTime / 1000) + " us");
+    }
+}
+
+
+interface BatchKernel {
+
+    /**
+     * Restores every ball to its normal size and speed and moves it along its velocity for a number of ticks,
+     * doing the same as calling restoreSize() and update() on each ball every tick.
+     * @param batch the balls to move
+     * @param steps the number of ticks to move by
+     */
+    void integrate(BallBatch batch, int steps);
+
+    /**
+     * Reverses the velocity of every ball touching an edge of the screen, as checkBoundaryCollision() does.
+     * @param batch the balls to check
+     * @param collided set to true for each ball that collided
+     */
+    void reflectBoundaries(BallBatch batch, boolean[] collided);
+
+    /**
+     * Checks which balls are touching a rectangle and moving towards it, using the same closest point test
+     * as checkWallCollision() without changing any ball.
+     * @param batch the balls to check
+     * @param rect the rectangle to check against
+     * @param touching set to true for each ball touching the rectangle
+     * @return the number of balls touching the rectangle
+     */
+    int wallContacts(BallBatch batch, WallRect rect, boolean[] touching);
+}
+
+
+class ScalarKernel implements BatchKernel {
+
+    @Override
+    public void integrate(BallBatch batch, int steps) {
+        integrate(batch, 0, steps);
+    }
+
+    @Override
+    public void reflectBoundaries(BallBatch batch, boolean[] collided) {
+        reflectBoundaries(batch, 0, collided);
+    }
+
+    @Override
+    public int wallContacts(BallBatch batch, WallRect rect, boolean[] touching) {
+        return wallContacts(batch, 0, rect, touching);
+    }
+
+    /**
+     * Moves the balls from an index onwards, used by the SIMD kernel for the balls left after its last full vector.
+     * @param batch the balls to move
+     * @param from the index of the first ball to move
+     * @param steps the number of ticks to move by
+     */
+    void integrate(BallBatch batch, int from, int steps) {
+        for (int i = from; i < batch.count; i++) {
+            //Restore normal speed and size before moving
+            batch.vx[i] = batch.vx[i] < 0 ? -2/(float) App.FPS : 2/(float) App.FPS;
+            batch.vy[i] = batch.vy[i] < 0 ? -2/(float) App.FPS : 2/(float) App.FPS;
+            batch.size[i] = 24;
+
+            float x = batch.x[i];
+            float y = batch.y[i];
+            for (int step = 0; step < steps; step++) {
+                x += batch.vx[i];
+                y += batch.vy[i];
+            }
+            batch.x[i] = x;
+            batch.y[i] = y;
+        }
+    }
+
+    /**
+     * Reflects the balls from an index onwards off the edges of the screen.
+     * @param batch the balls to check
+     * @param from the index of the first ball to check
+     * @param collided set to true for each ball that collided
+     */
+    void reflectBoundaries(BallBatch batch, int from, boolean[] collided) {
+        for (int i = from; i < batch.count; i++) {
+            float radius = batch.size[i]/2;
+            float cx = (batch.x[i]*App.CELLSIZE)+radius;
+            float cy = (batch.y[i]*App.CELLSIZE+App.TOPBAR)+radius;
+            collided[i] = false;
+
+            //Reflect across vertical boundary
+            if (cx-radius<=0 || cx+radius>=App.WIDTH) {
+                batch.vx[i] *= -1;
+                collided[i] = true;
+            }
+
+            //Reflect across horizontal boundary
+            if (cy+radius>=App.HEIGHT || cy-radius<=App.TOPBAR) {
+                batch.vy[i] *= -1;
+                collided[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Checks which balls from an index onwards are touching a rectangle.
+     * @param batch the balls to check
+     * @param from the index of the first ball to check
+     * @param rect the rectangle to check against
+     * @param touching set to true for each ball touching the rectangle
+     * @return the number of balls checked that are touching the rectangle
+     */
+    int wallContacts(BallBatch batch, int from, WallRect rect, boolean[] touching) {
+        float left = (float) rect.getLeft();
+        float right = (float) rect.getRight();
+        float top = (float) rect.getTop();
+        float bottom = (float) rect.getBottom();
+        int contacts = 0;
+
+        for (int i = from; i < batch.count; i++) {
+            float radius = batch.size[i]/2;
+            float cx = (batch.x[i]*App.CELLSIZE)+radius;
+            float cy = (batch.y[i]*App.CELLSIZE+App.TOPBAR)+radius;
+
+            //Distance from the closest point on the rectangle now and after moving
+            float distanceX = cx - Math.max(left, Math.min(right, cx));
+            float distanceY = cy - Math.max(top, Math.min(bottom, cy));
+            float futureDistanceX = distanceX + batch.vx[i];
+            float futureDistanceY = distanceY + batch.vy[i];
+            float distanceSquared = distanceX * distanceX + distanceY * distanceY;
+            float futureDistanceSquared = futureDistanceX * futureDistanceX + futureDistanceY * futureDistanceY;
+
+            touching[i] = distanceSquared <= radius * radius && futureDistanceSquared <= distanceSquared;
+            if (touching[i]) {
+                contacts++;
+            }
+        }
+        return contacts;
+    }
+}
@@ -0,0 +1,148 @@
+package inkball;
+
+import java.util.function.IntSupplier;
+
+public class BallQueue {
+
+    private static final int LOOKAHEAD = 6;
+
+    private int[] colours;
+    private int head = 0;
+    private int size = 0;
+    private IntSupplier source;
+
+    /**
+     * Constructor that creates an empty queue with room for 16 balls.
+     */
+    public BallQueue() {
+        this(16);
+    }
+
+    /**
+     * Constructor that creates an empty queue. The capacity is rounded up to a power of two so that positions
+     * in the ring can be wrapped with a mask.
+     * @param capacity the number of balls the queue can hold before growing
+     */
+    public BallQueue(int capacity) {
+        int rounded = 1;
+        while (rounded < capacity) {
+            rounded <<= 1;
+        }
+        colours = new int[rounded];
+    }
+
+    /**
+     * Adds a ball colour to the back of the queue, growing the ring only if every slot is in use.
+     * @param colour the colour of the ball
+     */
+    public void enqueue(int colour) {
+        if (size == colours.length) {
+            grow();
+        }
+        colours[(head + size) & (colours.length - 1)] = colour;
+        size++;
+    }
+
+    /**
+     * Adds all the ball colours of a level to the back of the queue in order.
+     * @param balls the colours of the balls
+     */
+    public void enqueueAll(int[] balls) {
+        for (int colour : balls) {
+            enqueue(colour);
+        }
+    }
+
+    /**
+     * Removes and returns the colour at the front of the queue. If the queue is fed by a source, it is
+     * topped up so the next few balls can always be displayed.
+     * @return the colour of the next ball
+     */
+    public int dequeue() {
+        if (size == 0) {
+            throw new IllegalStateException("No balls remaining in queue");
+        }
+        int colour = colours[head];
+        head = (head + 1) & (colours.length - 1);
+        size--;
+        refill();
+        return colour;
+    }
+
+    /**
+     * Gets the colour of a ball in the queue without removing it.
+     * @param index the position of the ball from the front of the queue
+     * @return the colour of the ball
+     */
+    public int peek(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for queue of size " + size);
+        }
+        return colours[(head + index) & (colours.length - 1)];
+    }
+
+    /**
+     * Sets a source of procedurally generated or streamed ball colours used for endless levels. The queue
+     * pulls from the source whenever fewer balls than needed for the display are buffered, so memory stays
+     * bounded no matter how long the level runs.
+     * @param source the supplier of ball colours, or null to stop generating balls
+     */
+    public void setSource(IntSupplier source) {
+        this.source = source;
+        refill();
+    }
+
+    /**
+     * Pulls balls from the source until enough are buffered.
+     */
+    private void refill() {
+        if (source != null) {
+            while (size < LOOKAHEAD) {
+                enqueue(source.getAsInt());
+            }
+        }
+    }
+
+    /**
+     * Doubles the capacity of the ring, copying the balls so the front of the queue is at the start.
+     */
+    private void grow() {
+        int[] larger = new int[colours.length * 2];
+        for (int i = 0; i < size; i++) {
+            larger[i] = colours[(head + i) & (colours.length - 1)];
+        }
+        colours = larger;
+        head = 0;
+    }
+
+    /**
+     * Creates a copy of the queue holding the same balls in the same order.
+     * @param source the source the copy pulls balls from, or null for none
+     * @return the copy
+     */
+    public BallQueue copy(IntSupplier source) {
+        BallQueue queue = new BallQueue(Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            queue.enqueue(peek(i));
+        }
+        queue.source = source;
+        return queue;
+    }
+
+    /**
+     * Removes all balls from the queue and detaches its source.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+        source = null;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+}
@@ -0,0 +1,109 @@
+package inkball;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class Board {
+
+    //Worker used to build the next level's board while the level end animation plays
+    private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "board-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public Tile[][] tiles;
+    public ArrayList<Wall> walls = new ArrayList<>();
+    public WallGrid wallGrid;
+    public ArrayList<Hole> holes = new ArrayList<>();
+    public ArrayList<Spawner> spawners = new ArrayList<>();
+    public ArrayList<Ball> balls = new ArrayList<>();
+
+    /**
+     * Builds the board of a level from its layout. It sets up the tiles, walls, spawners, holes and starting
+     * balls and merges the walls for collisions. The balls are not given a velocity, since that uses the game's
+     * random number generator, so a board can be built on any thread without changing how the game plays out.
+     * @param layoutLines each row of the level layout
+     * @param colours the colours walls can be
+     * @param rows the number of rows on the board
+     * @param cols the number of columns on the board
+     * @return the board
+     */
+    public static Board build(String[] layoutLines, Colours colours, int rows, int cols) {
+        Board board = new Board();
+        board.tiles = new Tile[rows][cols];
+
+        //Initialise game board
+        for (int i = 0; i < rows; i++) {
+            for (int i2 = 0; i2 < cols; i2++) {
+                board.tiles[i][i2] = new Tile(i2, i);
+            }
+        }
+
+        //Set elements on the board based on each character in level layout file
+        for (int i = 0; i < layoutLines.length; i++) {
+            String line = layoutLines[i];
+
+            for (int i2 = 0; i2 < line.length(); i2++) {
+                char c = line.charAt(i2);
+
+                switch (c) {
+                    case 'X':
+                        Wall wall = new Wall(i2, i, 0);
+                        board.walls.add(wall);
+                        board.tiles[i][i2] = wall;
+                        break;
+                    case 'S':
+                        Spawner spawner = new Spawner(i2, i);
+                        board.spawners.add(spawner);
+                        board.tiles[i][i2] = spawner;
+                        break;
+                    case 'H':
+                        int colour = Character.getNumericValue(line.charAt(i2 + 1));
+                        Hole hole = new Hole(i2, i, colour);
+                        board.holes.add(hole);
+                        board.tiles[i][i2] = hole;
+                        board.tiles[i][i2+1] = null;
+                        board.tiles[i+1][i2] = null;
+                        board.tiles[i+1][i2+1] = null;
+                        i2++;
+                        break;
+                    case 'B':
+                        int bcolour = Character.getNumericValue(line.charAt(i2 + 1));
+                        board.balls.add(new Ball(i2, i, bcolour));
+                        i2++;
+                        break;
+                    default:
+                        //Coloured walls, written with the character of their colour
+                        int wColour = colours.wallColour(c);
+                        if (wColour > 0 && board.tiles[i][i2] != null) {
+                            Wall cWall = new Wall(i2, i, wColour);
+                            board.walls.add(cWall);
+                            board.tiles[i][i2] = cWall;
+                        }
+                        break;
+                }
+            }
+        }
+
+        //Merge the walls into larger rectangles for collisions
+        board.wallGrid = new WallGrid(rows, cols);
+        for (Wall wall : board.walls) {
+            board.wallGrid.add(wall);
+        }
+        board.wallGrid.build();
+        return board;
+    }
+
+    /**
+     * Starts building the board of a level on a background thread.
+     * @param config the configuration to read the level layout from
+     * @param level the level to build
+     * @param rows the number of rows on the board
+     * @param cols the number of columns on the board
+     * @return the board once it is built
+     */
+    public static Future<Board> prefetch(Config config, Level level, int rows, int cols) {
+        return PREFETCHER.submit(() -> build(config.loadLayout(level), config.colours, rows, cols));
+    }
+}
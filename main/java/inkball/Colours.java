@@ -0,0 +1,187 @@
+package inkball;
+
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+public class Colours {
+
+    public static final String[] DEFAULT_NAMES = {"grey", "orange", "blue", "green", "yellow"};
+    public static final int MAX = 36; //Colours a layout can name, one character each from 0-9 then a-z
+    private static final String INCREASE = "score_increase_from_hole_capture";
+    private static final String DECREASE = "score_decrease_from_wrong_hole";
+
+    public final String[] names;
+    public final String[] sprites; //Ending of the name of each colour's ball, hole, wall and broken wall sprites
+    public final float[] scoreIncrease;
+    public final float[] scoreDecrease;
+
+    //Full sprite names, built once so drawing does not build strings
+    public final String[] ballSprites;
+    public final String[] holeSprites;
+    public final String[] wallSprites;
+    public final String[] brokenSprites;
+
+    /**
+     * Constructor that creates a table of colours, indexed by the number each colour has on the board. The first
+     * colour is the one that matches every other: balls of it can enter any hole and holes of it take any ball.
+     * @param names the name of each colour, as used in the list of balls of a level
+     * @param sprites the ending of the sprite names of each colour, such as "0" for ball0, hole0, wall0 and broken0
+     * @param scoreIncrease the score added for capturing a ball of each colour
+     * @param scoreDecrease the score taken away for a ball of each colour entering the wrong hole
+     */
+    public Colours(String[] names, String[] sprites, float[] scoreIncrease, float[] scoreDecrease) {
+        if (names.length == 0 || names.length > MAX) {
+            throw new IllegalArgumentException("Expected between 1 and " + MAX + " colours, found " + names.length);
+        }
+        this.names = names;
+        this.sprites = sprites;
+        this.scoreIncrease = scoreIncrease;
+        this.scoreDecrease = scoreDecrease;
+
+        ballSprites = new String[names.length];
+        holeSprites = new String[names.length];
+        wallSprites = new String[names.length];
+        brokenSprites = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ballSprites[i] = "ball" + sprites[i];
+            holeSprites[i] = "hole" + sprites[i];
+            wallSprites[i] = "wall" + sprites[i];
+            brokenSprites[i] = "broken" + sprites[i];
+        }
+    }
+
+    /**
+     * Reads the colours of a configuration file. Each entry of the "colours" list gives a name, a sprite and the
+     * scores of a colour. Without the list, the five original colours are used with the sprites 0 to 4 and the
+     * scores in the "score_increase_from_hole_capture" and "score_decrease_from_wrong_hole" objects, keyed by
+     * colour name. An entry without scores also takes them from those objects.
+     * @param json the configuration file
+     * @return the colours
+     */
+    public static Colours load(JSONObject json) {
+        JSONObject increase = json.hasKey(INCREASE) ? json.getJSONObject(INCREASE) : null;
+        JSONObject decrease = json.hasKey(DECREASE) ? json.getJSONObject(DECREASE) : null;
+        JSONArray list = json.hasKey("colours") ? json.getJSONArray("colours") : null;
+
+        int count = list != null ? list.size() : DEFAULT_NAMES.length;
+        String[] names = new String[count];
+        String[] sprites = new String[count];
+        float[] scoreIncrease = new float[count];
+        float[] scoreDecrease = new float[count];
+
+        for (int i = 0; i < count; i++) {
+            JSONObject entry = list != null ? list.getJSONObject(i) : null;
+            names[i] = entry != null ? entry.getString("name") : DEFAULT_NAMES[i];
+            sprites[i] = entry != null ? entry.getString("sprite", String.valueOf(i)) : String.valueOf(i);
+            scoreIncrease[i] = score(entry, INCREASE, increase, names[i]);
+            scoreDecrease[i] = score(entry, DECREASE, decrease, names[i]);
+        }
+        return new Colours(names, sprites, scoreIncrease, scoreDecrease);
+    }
+
+    /**
+     * Creates a table of the five original colours and their sprites, for drawing without a configuration file.
+     * Every score is 0.
+     * @return the colours
+     */
+    public static Colours defaults() {
+        String[] sprites = new String[DEFAULT_NAMES.length];
+        for (int i = 0; i < sprites.length; i++) {
+            sprites[i] = String.valueOf(i);
+        }
+        return new Colours(DEFAULT_NAMES, sprites, new float[sprites.length], new float[sprites.length]);
+    }
+
+    /**
+     * Reads a score of a colour from its entry, or from the object of scores keyed by colour name if the entry
+     * does not have it.
+     * @param entry the entry of the colour, or null
+     * @param key the name of the score
+     * @param scores the object of scores keyed by colour name, or null
+     * @param name the name of the colour
+     * @return the score
+     */
+    private static float score(JSONObject entry, String key, JSONObject scores, String name) {
+        if (entry != null && entry.hasKey(key)) {
+            return entry.getFloat(key);
+        }
+        if (scores == null || !scores.hasKey(name)) {
+            throw new IllegalArgumentException("No " + key + " for colour " + name);
+        }
+        return scores.getFloat(name);
+    }
+
+    /**
+     * Writes the colours into a configuration file as a "colours" list.
+     * @param json the configuration file
+     */
+    public void save(JSONObject json) {
+        JSONArray list = new JSONArray();
+        for (int i = 0; i < names.length; i++) {
+            JSONObject entry = new JSONObject();
+            entry.setString("name", names[i]);
+            entry.setString("sprite", sprites[i]);
+            entry.setFloat(INCREASE, scoreIncrease[i]);
+            entry.setFloat(DECREASE, scoreDecrease[i]);
+            list.append(entry);
+        }
+        json.setJSONArray("colours", list);
+    }
+
+    /**
+     * Gets the number of a colour from its name.
+     * @param name the name of the colour
+     * @return the number of the colour
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown colour " + name);
+    }
+
+    /**
+     * Assigns a number to each colour of ball in a list of colour names.
+     * @param balls the list of colour names
+     * @return the colour numbers
+     */
+    public int[] indicesOf(JSONArray balls) {
+        int[] colours = new int[balls.size()];
+        for (int i = 0; i < balls.size(); i++) {
+            colours[i] = indexOf(balls.getString(i));
+        }
+        return colours;
+    }
+
+    /**
+     * Gets the colour of a wall written as a character in a layout file. X is a grey wall, and any other colour
+     * in the table is written with its own character, 1-9 then a-z.
+     * @param c the character
+     * @return the colour of the wall, or -1 if the character is not a wall
+     */
+    public int wallColour(char c) {
+        if (c == 'X') {
+            return 0;
+        }
+        if ((c < '1' || c > '9') && (c < 'a' || c > 'z')) {
+            return -1; //Capital letters are other tiles, even though they read as numbers too
+        }
+        int colour = Character.digit(c, MAX);
+        return colour < names.length ? colour : -1;
+    }
+
+    /**
+     * Gets the character a colour is written as in a layout file, after an H or a B or on its own for a wall.
+     * @param colour the number of the colour
+     * @return the character
+     */
+    public static char toChar(int colour) {
+        return Character.forDigit(colour, MAX);
+    }
+
+    public int size() {
+        return this.names.length;
+    }
+}
@@ -0,0 +1,169 @@
+package inkball;
+
+import processing.core.PApplet;
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+import java.io.File;
+import java.util.*;
+
+public class Config {
+
+    public File directory;
+    public ArrayList<Level> levels = new ArrayList<>();
+    public Colours colours; //Name, sprites and scores of each ball colour
+    private Map<String, String[]> layouts = new HashMap<>(); //Lines of each layout file, read once
+    private LevelPack pack; //Levels read on demand from a level pack, or null if they are all in levels
+    private Map<Integer, Level> packLevels = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Level> eldest) {
+            return size() > PACK_CACHE; //Only keep recently used levels from the pack
+        }
+    });
+    private static final int PACK_CACHE = 8;
+
+    /**
+     * Loads and stores all the information about each level and the score values for each ball colour from a
+     * configuration file. Layout files are looked up relative to the directory of the configuration file.
+     * @param path the path to the configuration file
+     * @return the parsed configuration
+     */
+    public static Config load(String path) {
+        return load(path, null);
+    }
+
+    /**
+     * Loads a configuration file, reusing the layouts already read by a previous configuration so only layout
+     * files that were not loaded before are read from disk.
+     * @param path the path to the configuration file
+     * @param previous the configuration loaded before, or null
+     * @return the parsed configuration
+     */
+    public static Config load(String path, Config previous) {
+        File file = new File(path);
+        if (path.endsWith(LevelPack.EXTENSION)) {
+            return loadPack(file);
+        }
+        JSONObject jsonObject = PApplet.loadJSONObject(file);
+        if (jsonObject == null) {
+            throw new IllegalArgumentException("Could not load configuration file " + path);
+        }
+
+        Config config = new Config();
+        config.directory = file.getAbsoluteFile().getParentFile();
+
+        //Read the colours first, since the balls of each level are named by colour
+        config.colours = Colours.load(jsonObject);
+        JSONArray levelsArray = jsonObject.getJSONArray("levels");
+
+        //Set attributes of a level
+        for (int i = 0; i < levelsArray.size(); i++) {
+            JSONObject levelData = levelsArray.getJSONObject(i);
+            String layout = levelData.getString("layout");
+            int time = levelData.getInt("time", -1);
+            int spawnInterval = levelData.getInt("spawn_interval");
+            float scoreIncreaseModifier = levelData.getFloat("score_increase_from_hole_capture_modifier");
+            float scoreDecreaseModifier = levelData.getFloat("score_decrease_from_wrong_hole_modifier");
+            int[] balls = config.colours.indicesOf(levelData.getJSONArray("balls"));
+            Level level = new Level(layout, time, spawnInterval, scoreIncreaseModifier, scoreDecreaseModifier, balls);
+            level.endless = levelData.getBoolean("endless", false);
+            config.levels.add(level);
+
+            //Read each layout once, up front
+            if (!config.layouts.containsKey(layout)) {
+                String[] lines = previous != null ? previous.layouts.get(layout) : null;
+                config.layouts.put(layout, lines != null ? lines : config.readLayout(layout));
+            }
+        }
+
+        return config;
+    }
+
+    /**
+     * Opens a level pack and reads its colours. Levels are only read from the pack when they are played.
+     * @param file the level pack file
+     * @return the configuration for the pack
+     */
+    private static Config loadPack(File file) {
+        Config config = new Config();
+        config.directory = file.getAbsoluteFile().getParentFile();
+        config.pack = new LevelPack(file);
+        config.colours = config.pack.getColours();
+        return config;
+    }
+
+    /**
+     * Gets a level, reading it from the level pack if the configuration is a pack.
+     * @param index the index of the level
+     * @return the level
+     */
+    public Level getLevel(int index) {
+        if (pack == null) {
+            return levels.get(index);
+        }
+        return packLevels.computeIfAbsent(index, pack::readLevel);
+    }
+
+    /**
+     * Gets the number of levels in the configuration.
+     * @return the number of levels
+     */
+    public int getLevelCount() {
+        return pack != null ? pack.size() : levels.size();
+    }
+
+    /**
+     * Gets the lines of the layout file of a level. Layouts are read along with the levels, so this does not
+     * touch the disk unless the layout was not part of the configuration file.
+     * @param level the level to load the layout of
+     * @return each row of the layout
+     */
+    public String[] loadLayout(Level level) {
+        if (level.layoutLines != null) {
+            return level.layoutLines; //Read from a level pack along with the level
+        }
+        String[] layoutLines = layouts.get(level.layout);
+        if (layoutLines == null) {
+            layoutLines = readLayout(level.layout);
+        }
+        return layoutLines;
+    }
+
+    /**
+     * Reads the lines of a layout file from disk.
+     * @param layout the name of the layout file
+     * @return each row of the layout
+     */
+    private String[] readLayout(String layout) {
+        String[] layoutLines = PApplet.loadStrings(new File(directory, layout));
+        if (layoutLines == null) {
+            throw new IllegalArgumentException("Could not load level layout " + layout);
+        }
+        return layoutLines;
+    }
+
+    /**
+     * Creates a copy of this configuration with one layout file read again from disk. The levels and score
+     * values are shared with this configuration, which is left unchanged.
+     * @param layout the name of the layout file that changed
+     * @return the new configuration
+     */
+    public Config withLayout(String layout) {
+        Config config = new Config();
+        config.directory = this.directory;
+        config.levels = this.levels;
+        config.colours = this.colours;
+        config.pack = this.pack;
+        config.layouts = new HashMap<>(this.layouts);
+        config.layouts.put(layout, readLayout(layout));
+        return config;
+    }
+
+    /**
+     * Gets the names of all the layout files used by the levels.
+     * @return the layout file names
+     */
+    public Set<String> getLayouts() {
+        return Collections.unmodifiableSet(layouts.keySet());
+    }
+}
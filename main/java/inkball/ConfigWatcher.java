@@ -0,0 +1,162 @@
+package inkball;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+public class ConfigWatcher implements Runnable {
+
+    private static final long SETTLE_MILLIS = 100; //Time to wait for an editor to finish saving before reading
+
+    private File configFile;
+    private AtomicReference<Config> current;
+    private Consumer<Config> listener;
+    private WatchService watchService;
+    private Map<WatchKey, Path> directories = new HashMap<>();
+    private Thread thread;
+
+    /**
+     * Constructor that watches a configuration file and the layout files of its levels for changes. Whenever one
+     * is saved, only that file is parsed again on a background thread and a new configuration is passed to the
+     * listener. The configuration passed on is never changed afterwards, so it can be swapped in without locking.
+     * @param path the path to the configuration file
+     * @param config the configuration currently loaded from the file
+     * @param listener called on the watcher thread with each reloaded configuration
+     */
+    public ConfigWatcher(String path, Config config, Consumer<Config> listener) {
+        this.configFile = new File(path).getAbsoluteFile();
+        this.current = new AtomicReference<>(config);
+        this.listener = listener;
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        register(configFile.getParentFile().toPath());
+        registerLayouts(config);
+    }
+
+    /**
+     * Starts watching for changes on a daemon thread.
+     */
+    public void start() {
+        thread = new Thread(this, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching for changes.
+     */
+    public void stop() {
+        try {
+            watchService.close(); //Wakes the watcher thread, which then exits
+        }
+        catch (IOException e) {
+            System.err.println("Could not stop watching config: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for files to change and reloads them until the watcher is stopped.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Thread.sleep(SETTLE_MILLIS);
+
+                //Collect each changed file once, since saving a file often gives several events
+                Set<Path> changed = new LinkedHashSet<>();
+                Path directory = directories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() != StandardWatchEventKinds.OVERFLOW && directory != null) {
+                        changed.add(directory.resolve((Path) event.context()).normalize());
+                    }
+                }
+                key.reset();
+
+                for (Path path : changed) {
+                    reload(path);
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e) {
+            //Stopped
+        }
+    }
+
+    /**
+     * Parses a changed file again if it is the configuration file or one of its layouts and passes the new
+     * configuration to the listener. A file that cannot be parsed, such as one saved halfway, is reported and
+     * the previous configuration is kept.
+     * @param path the path of the file that changed
+     */
+    private void reload(Path path) {
+        Config config = current.get();
+        Config updated = null;
+
+        try {
+            if (path.equals(configFile.toPath().normalize())) {
+                updated = Config.load(configFile.getPath(), config);
+                registerLayouts(updated);
+            }
+            else {
+                for (String layout : config.getLayouts()) {
+                    if (path.equals(new File(config.directory, layout).toPath().normalize())) {
+                        updated = config.withLayout(layout);
+                        break;
+                    }
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            System.err.println("Could not reload " + path.getFileName() + ": " + e.getMessage());
+            return;
+        }
+
+        if (updated != null && current.compareAndSet(config, updated)) {
+            System.out.println("Reloaded " + path.getFileName());
+            listener.accept(updated);
+        }
+    }
+
+    /**
+     * Watches the directories of every layout file of a configuration.
+     * @param config the configuration to watch the layouts of
+     */
+    private void registerLayouts(Config config) {
+        for (String layout : config.getLayouts()) {
+            register(new File(config.directory, layout).getAbsoluteFile().getParentFile().toPath());
+        }
+    }
+
+    /**
+     * Watches a directory for files being created or changed, unless it is already watched.
+     * @param directory the directory to watch
+     */
+    private void register(Path directory) {
+        Path normalized = directory.normalize();
+        if (directories.containsValue(normalized)) {
+            return;
+        }
+        try {
+            WatchKey key = normalized.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+            directories.put(key, normalized);
+        }
+        catch (IOException e) {
+            System.err.println("Could not watch " + directory + ": " + e.getMessage());
+        }
+    }
+
+    public Config getConfig() {
+        return this.current.get();
+    }
+}
@@ -0,0 +1,370 @@
+package inkball;
+
+import processing.core.PVector;
+import java.util.*;
+
+public class EventSimulator {
+
+    private static final float RADIUS = 12;
+    private static final float NORMAL_SIZE = 24;
+    private static final float LINE_REACH = 17; //Distance from a line point within which a ball can collide with it
+    private static final float HOLE_REACH = 32; //Distance from a hole within which a ball is pulled in
+    private static final int MARGIN = 2; //Ticks to stop early by, covering rounding in the predicted times
+
+    private Game game;
+    private PriorityQueue<BallEvent> events = new PriorityQueue<>();
+    private IdentityHashMap<Ball, BallEvent> predicted = new IdentityHashMap<>();
+    private long now = 0;
+    private IdentityHashMap<Line, int[]> linePoints = new IdentityHashMap<>(); //Generation, points and refresh of each line when last predicted
+    private int refreshes = 0;
+    private boolean wasPaused = false;
+    private long fullTicks = 0;
+    private long skippedTicks = 0;
+    private BallBatch batch = new BallBatch();
+
+    /**
+     * Constructor that creates an event-driven simulation of a game. Between events every ball moves in a
+     * straight line at constant speed, so the simulation predicts the first tick each ball could touch a wall,
+     * line, edge of the screen or hole and jumps straight to the earliest one. Only the ticks around these events,
+     * spawns and the end of the countdown are run in full, which gives the same outcome as stepping every tick.
+     * @param game the game to simulate, with its level already set up
+     */
+    public EventSimulator(Game game) {
+        this.game = game;
+    }
+
+    /**
+     * Simulates the game until the level ends or a number of ticks have passed.
+     * @param maxTicks the maximum number of ticks to simulate
+     * @return the number of ticks simulated
+     */
+    public int run(int maxTicks) {
+        int simulated = 0;
+
+        while (simulated < maxTicks && !game.levelEnded) {
+            refresh();
+
+            //Jump to the tick before the earliest ball event, spawn or the end of the countdown. The other steps of
+            //the countdown and the ball queue slide run in the middle of skipped ticks
+            long skip = maxTicks - simulated;
+            if (!events.isEmpty()) {
+                skip = Math.min(skip, events.peek().tick - now);
+            }
+            skip = Math.min(skip, game.ticksUntilTimerEvent() - 1L);
+            if (game.balls.isEmpty() && game.remainingBalls.isEmpty()) {
+                skip = 0; //Nothing is left to capture, so the level is won on the next tick
+            }
+
+            if (skip > 0 && !game.paused) {
+                skip((int) skip);
+                simulated += skip;
+                if (simulated >= maxTicks) {
+                    break;
+                }
+            }
+
+            //Run the event tick in full
+            game.tick();
+            now++;
+            fullTicks++;
+            simulated++;
+
+            //Balls whose events were due may have bounced, so they are predicted again
+            while (!events.isEmpty() && events.peek().tick <= now) {
+                BallEvent event = events.poll();
+                if (predicted.get(event.ball) == event) {
+                    predicted.remove(event.ball);
+                }
+            }
+        }
+        return simulated;
+    }
+
+    /**
+     * Moves every ball along its path and advances the timers by a number of ticks without checking for any
+     * collisions. This does exactly what a full tick does to a ball that touches nothing, with all the balls
+     * moved together by the batch kernel, or one by one with integers in fixed point games.
+     * @param ticks the number of ticks to skip
+     */
+    private void skip(int ticks) {
+        Heatmap heatmap = game.getHeatmap();
+        if (heatmap != null) {
+            for (Ball ball : game.balls) {
+                heatmap.travel(ball, ticks);
+            }
+        }
+        if (game.fixedPoint) {
+            for (Ball ball : game.balls) {
+                ball.skip(ticks);
+            }
+        }
+        else {
+            batch.load(game.balls);
+            BallBatch.KERNEL.integrate(batch, ticks);
+            batch.store(game.balls);
+        }
+        game.playScheduler.advance(ticks); //The level has not ended, or the simulation would have stopped
+        game.scheduler.advance(ticks);
+        now += ticks;
+        skippedTicks += ticks;
+    }
+
+    /**
+     * Predicts events for balls that do not have one. If a line has been drawn or extended since the last
+     * prediction, a ball's path may now cross it, so every ball is predicted again. Erased lines only remove
+     * obstacles, so they leave the predictions safe. Balls are also predicted again after the game is paused or
+     * unpaused, since a paused ball has no velocity to predict from. Balls and lines are reused from pools once
+     * they leave the board, so one with a different generation than when it was predicted is treated as new. The
+     * points of each line are kept in place from one refresh to the next, so nothing is allocated unless a line is
+     * new to the simulation.
+     */
+    private void refresh() {
+        boolean linesAdded = false;
+        refreshes++;
+        for (Line line : game.lines) {
+            int[] previous = linePoints.get(line);
+            if (previous == null) {
+                previous = new int[3];
+                linePoints.put(line, previous);
+                linesAdded = true;
+            }
+            else if (previous[0] != line.generation || previous[1] < line.points.size()) {
+                linesAdded = true;
+            }
+            previous[0] = line.generation;
+            previous[1] = line.points.size();
+            previous[2] = refreshes;
+        }
+
+        //Forget lines that have been erased, which can only be the case if more lines are known than on the board
+        if (linePoints.size() > game.lines.size()) {
+            linePoints.values().removeIf(previous -> previous[2] != refreshes);
+        }
+
+        if (linesAdded || game.paused || wasPaused) {
+            events.clear();
+            predicted.clear();
+        }
+        wasPaused = game.paused;
+        if (game.paused) {
+            return;
+        }
+
+        for (Ball ball : game.balls) {
+            BallEvent previous = predicted.get(ball);
+            if (previous == null || previous.generation != ball.generation) {
+                BallEvent event = new BallEvent(ball, now + predict(ball));
+                predicted.put(ball, event);
+                events.add(event);
+            }
+        }
+    }
+
+    /**
+     * Predicts the number of ticks a ball can move before it could collide with anything or be pulled into a hole.
+     * @param ball the ball to predict
+     * @return the number of ticks that can safely be skipped
+     */
+    public long predict(Ball ball) {
+        //A ball that was just near a hole has not been restored to its normal size and speed yet
+        if (ball.getSize() != NORMAL_SIZE) {
+            return 0;
+        }
+
+        float cx = ball.centrePosition.x;
+        float cy = ball.centrePosition.y;
+        //Every tick starts by restoring the normal speed, which keeps only the direction of the velocity
+        PVector velocity = ball.getVelocity();
+        float speed = 2f / App.FPS * App.CELLSIZE; //Pixels moved per tick
+        float vx = velocity.x < 0 ? -speed : speed;
+        float vy = velocity.y < 0 ? -speed : speed;
+
+        //Edges of the screen
+        float time = boundaryTime(cx, vx, RADIUS, App.WIDTH - RADIUS);
+        time = Math.min(time, boundaryTime(cy, vy, App.TOPBAR + RADIUS, App.HEIGHT - RADIUS));
+
+        //Walls, expanded by the radius of the ball
+        for (WallRect rect : game.wallGrid.getRects()) {
+            time = Math.min(time, boxTime(cx, cy, vx, vy, (float) rect.getLeft() - RADIUS, (float) rect.getTop() - RADIUS,
+                (float) rect.getRight() + RADIUS, (float) rect.getBottom() + RADIUS));
+        }
+
+        //Holes
+        for (Hole hole : game.holes) {
+            time = Math.min(time, circleTime(cx, cy, vx, vy, hole.centrePosition.x, hole.centrePosition.y, HOLE_REACH));
+        }
+
+        //Every point of every line
+        for (Line line : game.lines) {
+            for (PVector point : line.points) {
+                time = Math.min(time, circleTime(cx, cy, vx, vy, point.x, point.y, LINE_REACH));
+            }
+        }
+
+        if (time == Float.POSITIVE_INFINITY) {
+            return Long.MAX_VALUE / 2;
+        }
+        return Math.max(0, (long) Math.floor(time) - MARGIN);
+    }
+
+    /**
+     * Calculates when a point moving along one axis reaches either end of a range.
+     * @param c the position of the point
+     * @param v the velocity of the point
+     * @param min the lower end of the range
+     * @param max the upper end of the range
+     * @return the time in ticks, or 0 if already outside the range
+     */
+    private static float boundaryTime(float c, float v, float min, float max) {
+        if (c <= min || c >= max) {
+            return 0;
+        }
+        if (v > 0) {
+            return (max - c) / v;
+        }
+        if (v < 0) {
+            return (c - min) / -v;
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Calculates when a moving point enters a box using the times it crosses each pair of sides.
+     * @param cx the x position of the point
+     * @param cy the y position of the point
+     * @param vx the x velocity of the point
+     * @param vy the y velocity of the point
+     * @param left the left x coordinate of the box
+     * @param top the top y coordinate of the box
+     * @param right the right x coordinate of the box
+     * @param bottom the bottom y coordinate of the box
+     * @return the time in ticks, 0 if already inside or infinity if it never enters
+     */
+    private static float boxTime(float cx, float cy, float vx, float vy, float left, float top, float right, float bottom) {
+        float enter = 0;
+        float exit = Float.POSITIVE_INFINITY;
+
+        //Left and right sides
+        if (vx == 0) {
+            if (cx < left || cx > right) {
+                return Float.POSITIVE_INFINITY;
+            }
+        }
+        else {
+            float t1 = (left - cx) / vx;
+            float t2 = (right - cx) / vx;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+
+        //Top and bottom sides
+        if (vy == 0) {
+            if (cy < top || cy > bottom) {
+                return Float.POSITIVE_INFINITY;
+            }
+        }
+        else {
+            float t1 = (top - cy) / vy;
+            float t2 = (bottom - cy) / vy;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+
+        if (enter > exit) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return enter;
+    }
+
+    /**
+     * Calculates when a moving point comes within a distance of another point.
+     * @param cx the x position of the moving point
+     * @param cy the y position of the moving point
+     * @param vx the x velocity of the moving point
+     * @param vy the y velocity of the moving point
+     * @param px the x position of the other point
+     * @param py the y position of the other point
+     * @param reach the distance to come within
+     * @return the time in ticks, 0 if already within reach or infinity if it never comes within reach
+     */
+    private static float circleTime(float cx, float cy, float vx, float vy, float px, float py, float reach) {
+        float dx = cx - px;
+        float dy = cy - py;
+        float c = dx*dx + dy*dy - reach*reach;
+        if (c <= 0) {
+            return 0;
+        }
+
+        float a = vx*vx + vy*vy;
+        float b = 2 * (dx*vx + dy*vy);
+        float discriminant = b*b - 4*a*c;
+        if (a == 0 || discriminant < 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float time = (float) ((-b - Math.sqrt(discriminant)) / (2*a));
+        if (time < 0) {
+            return Float.POSITIVE_INFINITY; //Moving away
+        }
+        return time;
+    }
+
+    public long getFullTicks() {
+        return this.fullTicks;
+    }
+
+    public long getSkippedTicks() {
+        return this.skippedTicks;
+    }
+
+    /**
+     * Runs a level headlessly with the event-driven simulation and prints the outcome.
+     * Arguments are the configuration file, the level number, the random seed and the maximum number of ticks.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        String configPath = args.length > 0 ? args[0] : "config.json";
+        int level = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        int maxTicks = args.length > 3 ? Integer.parseInt(args[3]) : 180 * App.FPS;
+
+        Game game = new Game(Config.load(configPath), seed);
+        game.currentLevel = level;
+        game.resetGame();
+
+        EventSimulator simulator = new EventSimulator(game);
+        long start = System.nanoTime();
+        int ticks = simulator.run(maxTicks);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("Ticks simulated: " + ticks + " (" + simulator.getFullTicks() + " in full, "
+            + simulator.getSkippedTicks() + " skipped)");
+        System.out.println("Score: " + (int) game.getScore() + ", time left: " + game.time + ", balls on board: "
+            + game.balls.size() + ", level ended: " + game.levelEnded);
+        System.out.println("Took " + (elapsed / 1000) + " microseconds");
+    }
+}
+
+
+class BallEvent implements Comparable<BallEvent> {
+
+    public final Ball ball;
+    public final int generation; //Generation of the ball when predicted
+    public final long tick;
+
+    /**
+     * Constructor that sets the first tick a ball could collide with anything.
+     * @param ball the ball the event is for
+     * @param tick the tick of the event
+     */
+    public BallEvent(Ball ball, long tick) {
+        this.ball = ball;
+        this.generation = ball.generation;
+        this.tick = tick;
+    }
+
+    @Override
+    public int compareTo(BallEvent other) {
+        return Long.compare(this.tick, other.tick);
+    }
+}
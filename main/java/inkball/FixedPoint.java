@@ -0,0 +1,401 @@
+package inkball;
+
+import processing.core.PVector;
+
+import java.util.ArrayList;
+
+public final class FixedPoint {
+
+    public static final int SHIFT = 16; //Bits after the binary point
+    public static final long ONE = 1L << SHIFT;
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Converts a number to fixed point, rounding to the nearest step.
+     * @param value the number
+     * @return the number in fixed point
+     */
+    public static long fromFloat(double value) {
+        return Math.round(value * ONE);
+    }
+
+    /**
+     * Converts a fixed point number back to a float, used only for drawing and other code that only reads it.
+     * @param value the number in fixed point
+     * @return the number
+     */
+    public static float toFloat(long value) {
+        return (float) ((double) value / ONE);
+    }
+
+    /**
+     * Multiplies two fixed point numbers, rounding towards negative infinity.
+     * @param a the first number
+     * @param b the second number
+     * @return the product
+     */
+    public static long mul(long a, long b) {
+        return (a * b) >> SHIFT;
+    }
+
+    /**
+     * Divides two fixed point numbers, rounding towards zero.
+     * @param a the dividend
+     * @param b the divisor, which must not be zero
+     * @return the quotient
+     */
+    public static long div(long a, long b) {
+        return (a << SHIFT) / b;
+    }
+
+    /**
+     * Calculates the integer square root of a number, the largest integer whose square is not more than it. The
+     * square root of the square of a fixed point number is that number in fixed point again.
+     * @param value the number, which must not be negative
+     * @return the square root rounded down
+     */
+    public static long sqrt(long value) {
+        if (value < 2) {
+            return value;
+        }
+        //Start from the floating point root, which is within one of the answer, then correct it with integers only
+        long root = (long) Math.sqrt((double) value);
+        while (root * root > value) {
+            root--;
+        }
+        while ((root + 1) * (root + 1) <= value) {
+            root++;
+        }
+        return root;
+    }
+}
+
+
+class FixedBall {
+
+    static final long SPEED = FixedPoint.fromFloat(2.0 * App.CELLSIZE / App.FPS); //Pixels moved per tick at normal speed
+    static final long NORMAL_SIZE = 24 * FixedPoint.ONE;
+    static final long MIN_SIZE = 5 * FixedPoint.ONE;
+    static final long SHRINK = FixedPoint.fromFloat(0.95); //Size kept each tick while pulled into a hole
+    static final long PULL = FixedPoint.fromFloat(0.05); //Strength of a hole's pull, divided by the distance to it
+    static final long MAX_PULL = FixedPoint.fromFloat(0.09);
+    static final long LINE_REACH = 17 * FixedPoint.ONE; //Radius of the ball plus half the thickness of a line
+    static final long HOLE_REACH = 32 * FixedPoint.ONE;
+    static final long CAPTURE_REACH = 12 * FixedPoint.ONE;
+
+    //Pixels in fixed point
+    long x; //Left of the ball
+    long y; //Top of the ball
+    long cx; //Centre of the ball, moved out of walls when it hits one
+    long cy;
+    long vx; //Velocity in pixels per tick
+    long vy;
+    long size;
+    long heldVx; //Velocity kept while paused
+    long heldVy;
+
+    /**
+     * Constructor that takes the position, size and velocity of a ball, which are all whole numbers of pixels or
+     * set from whole numbers when a ball is created, so nothing is lost in converting them.
+     * @param position the top left of the ball in cells
+     * @param size the size of the ball in pixels
+     * @param velocity the velocity in cells per tick, or null if it has none yet
+     */
+    FixedBall(PVector position, float size, PVector velocity) {
+        this.x = FixedPoint.fromFloat(position.x * App.CELLSIZE);
+        this.y = FixedPoint.fromFloat(position.y * App.CELLSIZE + App.TOPBAR);
+        this.size = FixedPoint.fromFloat(size);
+        if (velocity != null) {
+            this.vx = FixedPoint.fromFloat(velocity.x * App.CELLSIZE);
+            this.vy = FixedPoint.fromFloat(velocity.y * App.CELLSIZE);
+        }
+        centre();
+    }
+
+    /**
+     * Constructor used by copy().
+     */
+    private FixedBall() {
+    }
+
+    /**
+     * Creates a copy that moves independently of this one.
+     * @return the copy
+     */
+    FixedBall copy() {
+        FixedBall copy = new FixedBall();
+        copy.x = x;
+        copy.y = y;
+        copy.cx = cx;
+        copy.cy = cy;
+        copy.vx = vx;
+        copy.vy = vy;
+        copy.size = size;
+        copy.heldVx = heldVx;
+        copy.heldVy = heldVy;
+        return copy;
+    }
+
+    /**
+     * Puts the centre of the ball in the middle of it, as update() does.
+     */
+    private void centre() {
+        cx = x + size/2;
+        cy = y + size/2;
+    }
+
+    /**
+     * Sets the velocity from cells per second, as Ball.setVelocity() takes it.
+     * @param vx the x velocity
+     * @param vy the y velocity
+     */
+    void setVelocity(float vx, float vy) {
+        this.vx = FixedPoint.fromFloat((double) vx * App.CELLSIZE / App.FPS);
+        this.vy = FixedPoint.fromFloat((double) vy * App.CELLSIZE / App.FPS);
+    }
+
+    /**
+     * Keeps the velocity and stops the ball, for when the game is paused.
+     */
+    void hold() {
+        heldVx = vx;
+        heldVy = vy;
+        vx = 0;
+        vy = 0;
+    }
+
+    /**
+     * Gives the ball back the velocity it had when it was held.
+     */
+    void release() {
+        vx = heldVx;
+        vy = heldVy;
+    }
+
+    /**
+     * Moves the ball by its velocity.
+     */
+    void update() {
+        x += vx;
+        y += vy;
+        centre();
+    }
+
+    /**
+     * Restores the normal size and speed of the ball, keeping the direction it moves in.
+     */
+    void restoreSize() {
+        vx = vx < 0 ? -SPEED : SPEED;
+        vy = vy < 0 ? -SPEED : SPEED;
+        size = NORMAL_SIZE;
+        centre();
+    }
+
+    /**
+     * Moves the ball for a number of ticks in which it touches nothing. This is exactly what restoring its size
+     * and moving it each tick would do, since the velocity does not change.
+     * @param ticks the number of ticks
+     */
+    void skip(int ticks) {
+        vx = vx < 0 ? -SPEED : SPEED;
+        vy = vy < 0 ? -SPEED : SPEED;
+        size = NORMAL_SIZE;
+        x += vx * ticks;
+        y += vy * ticks;
+        centre();
+    }
+
+    /**
+     * Reverses the velocity of the ball if it touches an edge of the screen.
+     * @return true if collided, false otherwise
+     */
+    boolean checkBoundaryCollision() {
+        long radius = size/2;
+        boolean collided = false;
+        if (cx - radius <= 0 || cx + radius >= App.WIDTH * FixedPoint.ONE) {
+            vx = -vx;
+            collided = true;
+        }
+        if (cy + radius >= App.HEIGHT * FixedPoint.ONE || cy - radius <= App.TOPBAR * FixedPoint.ONE) {
+            vy = -vy;
+            collided = true;
+        }
+        return collided;
+    }
+
+    /**
+     * Checks if the ball is touching a rectangle and moving towards it, and if so moves its centre out of the
+     * rectangle and reflects it off the side it hit, as Ball.checkWallCollision() does.
+     * @param left the left of the rectangle in pixels
+     * @param top the top of the rectangle in pixels
+     * @param right the right of the rectangle in pixels
+     * @param bottom the bottom of the rectangle in pixels
+     * @return true if collided, false otherwise
+     */
+    boolean checkWallCollision(double left, double top, double right, double bottom) {
+        long tileLeft = FixedPoint.fromFloat(left);
+        long tileTop = FixedPoint.fromFloat(top);
+        long tileRight = FixedPoint.fromFloat(right);
+        long tileBottom = FixedPoint.fromFloat(bottom);
+        long radius = size/2;
+
+        //Closest point of the rectangle and the distance to it now and after moving, with the velocity in cells
+        //per tick as the float physics measures it
+        long closestX = Math.max(tileLeft, Math.min(tileRight, cx));
+        long closestY = Math.max(tileTop, Math.min(tileBottom, cy));
+        long distanceX = cx - closestX;
+        long distanceY = cy - closestY;
+        long futureX = distanceX + vx / App.CELLSIZE;
+        long futureY = distanceY + vy / App.CELLSIZE;
+        long distanceSquared = distanceX*distanceX + distanceY*distanceY;
+        long futureSquared = futureX*futureX + futureY*futureY;
+        if (distanceSquared > radius*radius || futureSquared > distanceSquared) {
+            return false;
+        }
+
+        if (cx <= tileLeft) {
+            cx = tileLeft - radius;
+        }
+        else if (cx >= tileRight) {
+            cx = tileRight + radius;
+        }
+        if (cy <= tileTop) {
+            cy = tileTop - radius;
+        }
+        else if (cy >= tileBottom) {
+            cy = tileBottom + radius;
+        }
+
+        long overlapX = Math.abs(cx - closestX);
+        long overlapY = Math.abs(cy - closestY);
+        if (overlapX == overlapY) {
+            vx = -vx;
+            vy = -vy;
+        }
+        else if (overlapX > overlapY) {
+            vx = -vx;
+        }
+        else {
+            vy = -vy;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the ball touches two consecutive points of a line and if so reflects it off the segment between
+     * them, across whichever normal of the segment is on the ball's side.
+     * @param points the points of the line
+     * @return true if collided, false otherwise
+     */
+    boolean checkLineCollision(ArrayList<PVector> points) {
+        long reach = LINE_REACH * LINE_REACH;
+        for (int i = 0; i < points.size()-1; i++) {
+            long x1 = FixedPoint.fromFloat(points.get(i).x);
+            long y1 = FixedPoint.fromFloat(points.get(i).y);
+            long x2 = FixedPoint.fromFloat(points.get(i+1).x);
+            long y2 = FixedPoint.fromFloat(points.get(i+1).y);
+            if (distanceSquared(x1, y1) > reach || distanceSquared(x2, y2) > reach) {
+                continue;
+            }
+
+            //Unit normal of the segment, which is left at zero for a segment of no length as normalize() does
+            long dx = x2 - x1;
+            long dy = y2 - y1;
+            long length = FixedPoint.sqrt(dx*dx + dy*dy);
+            long nx = 0;
+            long ny = 0;
+            if (length != 0) {
+                nx = FixedPoint.div(-dy, length);
+                ny = FixedPoint.div(dx, length);
+            }
+
+            //Use the normal pointing at the ball from the middle of the segment, the second one if neither is closer
+            long midX = x1 + (dx >> 1);
+            long midY = y1 + (dy >> 1);
+            if (distanceSquared(midX + nx, midY + ny) >= distanceSquared(midX - nx, midY - ny)) {
+                nx = -nx;
+                ny = -ny;
+            }
+
+            long scale = 2 * (FixedPoint.mul(vx, nx) + FixedPoint.mul(vy, ny));
+            vx -= FixedPoint.mul(nx, scale);
+            vy -= FixedPoint.mul(ny, scale);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the ball is close enough to any hole to be pulled by it.
+     * @param holes the holes on the board
+     * @return true if it is, false otherwise
+     */
+    boolean isNearHole(ArrayList<Hole> holes) {
+        for (Hole hole : holes) {
+            if (distanceSquared(hole) <= HOLE_REACH * HOLE_REACH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pulls the ball towards every hole close enough and checks if it has been captured by one.
+     * @param holes the holes on the board
+     * @return the colour of the hole it was captured by, or -1 if it was not captured
+     */
+    int checkHoleCapture(ArrayList<Hole> holes) {
+        for (Hole hole : holes) {
+            if (distanceSquared(hole) <= HOLE_REACH * HOLE_REACH) {
+                updateHole(hole);
+                if (distanceSquared(hole) <= CAPTURE_REACH * CAPTURE_REACH) {
+                    return hole.getColour();
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Accelerates the ball towards a hole, moves it and shrinks it, as Ball.updateHole() does. The pull is
+     * measured in pixels while the velocity it is added to is in cells per tick, so it is scaled by the size of
+     * a cell here where the velocity is in pixels.
+     * @param hole the hole
+     */
+    private void updateHole(Hole hole) {
+        long dx = FixedPoint.fromFloat(hole.centrePosition.x) - cx;
+        long dy = FixedPoint.fromFloat(hole.centrePosition.y) - cy;
+        long distance = FixedPoint.sqrt(dx*dx + dy*dy);
+        long pull = distance == 0 ? MAX_PULL : Math.min(FixedPoint.div(PULL, distance), MAX_PULL);
+
+        vx += FixedPoint.mul(dx, pull) * App.CELLSIZE;
+        vy += FixedPoint.mul(dy, pull) * App.CELLSIZE;
+        x += vx;
+        y += vy;
+        centre();
+        size = Math.max(FixedPoint.mul(size, SHRINK), MIN_SIZE);
+    }
+
+    /**
+     * Gets the square of the distance from the centre of the ball to a point.
+     * @param px the x coordinate of the point in fixed point
+     * @param py the y coordinate of the point in fixed point
+     * @return the square of the distance, with twice the fraction bits
+     */
+    private long distanceSquared(long px, long py) {
+        long dx = px - cx;
+        long dy = py - cy;
+        return dx*dx + dy*dy;
+    }
+
+    /**
+     * Gets the square of the distance from the centre of the ball to the centre of a hole.
+     * @param hole the hole
+     * @return the square of the distance, with twice the fraction bits
+     */
+    private long distanceSquared(Hole hole) {
+        return distanceSquared(FixedPoint.fromFloat(hole.centrePosition.x), FixedPoint.fromFloat(hole.centrePosition.y));
+    }
+}
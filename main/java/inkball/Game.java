@@ -0,0 +1,958 @@
+package inkball;
+
+import processing.core.PApplet;
+import processing.core.PVector;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+
+public class Game {
+
+    public static final int ROWS = (App.HEIGHT-App.TOPBAR)/App.CELLSIZE;
+    public static final int COLS = App.WIDTH/App.CELLSIZE;
+    private static final int END_INTERVAL = 2; //Ticks between steps of the level end animation (about 67ms)
+    private static final int QUEUE_SHIFT = 26; //Ticks taken for the ball queue to move by one ball
+
+    public Config config;
+    private AtomicReference<Config> nextConfig = new AtomicReference<>();
+    public Random random;
+    public long seed;
+    public ScoreStore scoreStore; //Where finished levels and games are recorded, or null to not record them
+    public Replay recorder; //Records the input of the game so it can be replayed, or null to not record it
+    private boolean replayReferenced = false; //Whether a recorded score refers to the replay of this game
+    public Analytics analytics; //Counts where balls travel and collide for level designers, or null to not count
+    private Heatmap heatmap; //Heatmap of the current level in the analytics
+    public boolean flightEvents = true; //Emits flight recorder events, off for copies that are only played forward
+    public boolean fixedPoint = false; //Moves balls with integer physics that give the same result on any machine
+    public int currentLevel = 0;
+    public boolean paused = false;
+    public boolean demo = false; //Whether the automatic player should draw lines, turned on and off by demo input
+    public boolean levelEnded = false;
+    public boolean gameEnded = false;
+
+    private Tile[][] board;
+    private ArrayList<Spawner> spawners = new ArrayList<>();
+    public ArrayList<Wall> walls =  new ArrayList<>();
+    public WallGrid wallGrid;
+    public ArrayList<Hole> holes = new ArrayList<>();
+    public ArrayList<Ball> balls = new ArrayList<>();
+    public ArrayList<Line> lines = new ArrayList<>();
+    public Line currentLine;
+    private PVector lastPoint; //Last point the current line was dragged to, or null if it has not been dragged
+    private PVector lastPointStore = new PVector(); //Holds the last point, so dragging does not allocate
+    private PVector inputPoint = new PVector();
+    public Pools pools = new Pools(); //Balls, lines and points that have left the board, ready to be reused
+    public BallQueue remainingBalls = new BallQueue();
+    private float score;
+    private float startingScore = 0;
+    public int time;
+    public Scheduler scheduler = new Scheduler(); //The countdown and the level end animation
+    public Scheduler playScheduler = new Scheduler(); //Spawning and the ball queue slide, which stop once the level ends
+    private ScheduledTask spawnTask;
+    public boolean isQueueShifting = false;
+    private ScheduledTask shiftTask;
+    private ScheduledTask countdownTask;
+    private Future<Board> prefetched;
+    private Level prefetchedLevel;
+    private Config prefetchedConfig; //Configuration the prefetched board was read from
+    private int levelTicks = 0;
+    private int captures = 0;
+    private int wrongCaptures = 0;
+    private int gameTicks = 0;
+    private long levelStarted = System.nanoTime();
+
+    /**
+     * Constructor that creates a game for a configuration with a random seed.
+     * @param config the levels and score values of the game
+     */
+    public Game(Config config) {
+        this(config, new Random().nextLong());
+    }
+
+    /**
+     * Constructor that creates a game for a configuration. Every random choice of the game comes from a generator
+     * with the given seed, so two games with the same seed and the same input play out identically.
+     * @param config the levels and score values of the game
+     * @param seed the seed of the random number generator of the game
+     */
+    public Game(Config config, long seed) {
+        this.config = config;
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Sets up the board, loads the level layout, sets up the spawners, holes, walls and balls and
+     * resets all the relevant attributes each time the game needs to be reset. When a level is won, the next
+     * level's board is built in the background during the end animation and swapped in here.
+     */
+    public void resetGame() {
+        //Swap in a configuration that was reloaded since the last reset
+        Config reloaded = nextConfig.getAndSet(null);
+        if (reloaded != null) {
+            this.config = reloaded;
+            cancelPrefetched(); //Built from the layout before it was reloaded
+            if (currentLevel >= config.getLevelCount()) {
+                currentLevel = 0;
+            }
+        }
+
+        //Use the board built in the background during the end animation if there is one for this level
+        Level level = getLevel();
+        Board next = takePrefetched(level);
+        if (next == null) {
+            next = Board.build(config.loadLayout(level), config.colours, ROWS, COLS);
+        }
+
+        //Return the balls and lines of the last level to the pools and replace all previous elements
+        for (Ball ball : this.balls) {
+            pools.free(ball);
+        }
+        for (Line line : lines) {
+            pools.free(line);
+        }
+        this.board = next.tiles;
+        this.walls = next.walls;
+        this.wallGrid = next.wallGrid;
+        this.holes = next.holes;
+        this.spawners = next.spawners;
+        this.balls = next.balls;
+        lines.clear();
+        currentLine = null;
+        lastPoint = null;
+
+        for (Ball ball : this.balls) {
+            if (fixedPoint) {
+                ball.useFixedPoint();
+            }
+            ball.setVelocity(randomVelocity(), randomVelocity());
+        }
+
+        //Set a queue of balls for the level as in the config file
+        this.remainingBalls.clear();
+        this.remainingBalls.enqueueAll(level.balls);
+
+        //Keep generating balls from the level's colours in endless mode
+        if (level.endless && level.balls.length > 0) {
+            this.remainingBalls.setSource(() -> level.balls[random.nextInt(level.balls.length)]);
+        }
+
+        //Schedule the first spawn and the countdown timer
+        this.scheduler.clear();
+        this.playScheduler.clear();
+        scheduleSpawn(level.spawnInterval * App.FPS);
+        this.countdownTask = this.scheduler.scheduleRepeating(App.FPS, App.FPS, this::countdown);
+
+        //Reset all attributes and variables
+        this.score = startingScore;
+        this.time = level.time;
+        this.levelTicks = 0;
+        this.levelStarted = System.nanoTime();
+        this.heatmap = analytics != null ? analytics.level(currentLevel) : null;
+        this.captures = 0;
+        this.wrongCaptures = 0;
+        this.isQueueShifting = false;
+        this.shiftTask = null;
+        this.paused = false;
+        this.levelEnded = false;
+        this.gameEnded = false;
+        yellowTile1[0] = 0;
+        yellowTile1[1] = 0;
+        yellowTile2[0] = COLS-1;
+        yellowTile2[1] = ROWS-1;
+        initialised = false;
+    }
+
+    /**
+     * Gets the board prefetched for a level and clears it, or waits for it if it is still being built. A board
+     * prefetched from another configuration is not used, since a reloaded configuration shares its levels with
+     * the one before but may have a different layout for them.
+     * @param level the level being set up
+     * @return the prefetched board, or null if no board was prefetched for the level
+     */
+    private Board takePrefetched(Level level) {
+        Future<Board> future = prefetched;
+        Level futureLevel = prefetchedLevel;
+        Config futureConfig = prefetchedConfig;
+        prefetched = null;
+        prefetchedLevel = null;
+        prefetchedConfig = null;
+
+        if (future == null || futureLevel != level || futureConfig != config) {
+            if (future != null) {
+                future.cancel(false);
+            }
+            return null;
+        }
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e) {
+            return null; //Build it again here so the error is thrown on this thread
+        }
+    }
+
+    /**
+     * Stops building the prefetched board, if there is one, and forgets it.
+     */
+    private void cancelPrefetched() {
+        if (prefetched != null) {
+            prefetched.cancel(false);
+        }
+        prefetched = null;
+        prefetchedLevel = null;
+        prefetchedConfig = null;
+    }
+
+    /**
+     * Creates a copy of the game that can be played forward without affecting this game, for example to try out
+     * a line before drawing it. The copy has its own balls, walls, lines, ball queue and timers, and is not
+     * recorded in the score store. The level end animation is not copied.
+     * @param random the random number generator the copy uses for future spawns
+     * @return the copy
+     */
+    public Game copy(Random random) {
+        Game game = new Game(config, seed);
+        game.random = random;
+        game.flightEvents = false;
+        game.fixedPoint = this.fixedPoint;
+        game.currentLevel = this.currentLevel;
+        game.paused = this.paused;
+        game.levelEnded = this.levelEnded;
+        game.gameEnded = this.gameEnded;
+
+        //Copy the walls, which are damaged by balls, and keep every other tile
+        IdentityHashMap<Wall, Wall> copies = new IdentityHashMap<>();
+        game.board = new Tile[board.length][];
+        for (int i = 0; i < board.length; i++) {
+            game.board[i] = board[i].clone();
+            for (int i2 = 0; i2 < board[i].length; i2++) {
+                if (board[i][i2] instanceof Wall) {
+                    Wall copy = ((Wall) board[i][i2]).copy();
+                    copies.put((Wall) board[i][i2], copy);
+                    game.board[i][i2] = copy;
+                }
+            }
+        }
+        game.walls = new ArrayList<>();
+        for (Wall wall : this.walls) {
+            game.walls.add(copies.computeIfAbsent(wall, Wall::copy));
+        }
+        game.wallGrid = this.wallGrid.copy(copies);
+        game.holes = new ArrayList<>(this.holes);
+        game.spawners = new ArrayList<>(this.spawners);
+
+        for (Ball ball : this.balls) {
+            game.balls.add(ball.copy());
+        }
+        for (Line line : this.lines) {
+            Line copy = line.copy();
+            game.lines.add(copy);
+            if (line == this.currentLine) {
+                game.currentLine = copy;
+            }
+        }
+        game.lastPoint = this.lastPoint != null ? game.lastPointStore.set(this.lastPoint) : null;
+
+        Level level = getLevel();
+        IntSupplier source = level.endless && level.balls.length > 0
+            ? () -> level.balls[random.nextInt(level.balls.length)] : null;
+        game.remainingBalls = this.remainingBalls.copy(source);
+
+        game.score = this.score;
+        game.startingScore = this.startingScore;
+        game.time = this.time;
+        game.levelTicks = this.levelTicks;
+        game.gameTicks = this.gameTicks;
+        game.captures = this.captures;
+        game.wrongCaptures = this.wrongCaptures;
+
+        //Schedule the copy's timers to be due on the same ticks
+        game.spawnTask = game.playScheduler.schedule(Math.max(1, spawnTask.remaining()), game::spawnNext);
+        if (spawnTask.isDone()) {
+            game.playScheduler.cancel(game.spawnTask);
+        }
+        game.countdownTask = game.scheduler.scheduleRepeating(countdownTask.remaining(), App.FPS, game::countdown);
+        game.isQueueShifting = this.isQueueShifting;
+        if (shiftTask != null && !shiftTask.isDone()) {
+            game.shiftTask = game.playScheduler.schedule(shiftTask.remaining(), () -> game.isQueueShifting = false);
+        }
+        return game;
+    }
+
+    /**
+     * Sets a configuration to use from the next time the level is reset. This can be called from any thread.
+     * @param config the new configuration
+     */
+    public void setNextConfig(Config config) {
+        nextConfig.set(config);
+    }
+
+    /**
+     * Restarts the current level, or the whole game from the first level if the game has ended. The game draws a
+     * new seed for the restart, so nothing that happened in the attempt being left decides what happens next.
+     */
+    public void restart() {
+        restart(random.nextLong());
+    }
+
+    /**
+     * Restarts the current level, or the whole game from the first level if the game has ended, with a given seed.
+     * A recorded game keeps only the seed of a level restart, since the attempt it ends cannot affect the rest of
+     * the game. A new game gets a new recording, as the last one was saved when it ended.
+     * @param seed the seed of the random number generator from the restart on
+     */
+    public void restart(long seed) {
+        if (!levelEnded) {
+            emitLevel("restarted");
+        }
+        this.random = new Random(seed);
+        if (gameEnded) {
+            currentLevel = 0;
+            startingScore = 0;
+            gameTicks = 0;
+            this.seed = seed;
+            if (recorder != null) {
+                recorder = new Replay(seed, currentLevel);
+                recorder.fixedPoint = fixedPoint;
+                replayReferenced = false;
+            }
+        }
+        else if (recorder != null) {
+            recorder.restart(seed);
+        }
+        resetGame();
+    }
+
+    /**
+     * Pauses or unpauses the game if it has not ended. Balls are stopped while paused and continue with their
+     * previous velocity when unpaused.
+     */
+    public void togglePause() {
+        if (!paused && !gameEnded) {
+            for (Ball ball : this.balls) {
+                ball.hold();
+            }
+            paused = true;
+        }
+        else if (!gameEnded) {
+            for (Ball ball : this.balls) {
+                ball.release();
+            }
+            paused = false;
+        }
+    }
+
+    /**
+     * Starts a new player-drawn line at a point.
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     */
+    public void beginLine(float x, float y) {
+        currentLine = pools.line();
+        lines.add(currentLine);
+        currentLine.addPoint(x, y);
+    }
+
+    /**
+     * Keeps adding points to the current line as it is dragged. If points are too far away, it creates points
+     * in the middle to fill the gaps.
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     */
+    public void dragLine(float x, float y) {
+        if (currentLine == null) {
+            return; //The line was cleared by a restart while it was being drawn
+        }
+        PVector currentPoint = inputPoint.set(x, y);
+
+        if (lastPoint != null) {
+            float dist = PVector.dist(lastPoint, currentPoint);
+
+            //Fill in gaps between points if points too far away
+            if (dist >= 10) {
+                for (int i = 0; i < dist; i++) {
+                    float lerpX = PApplet.lerp(lastPoint.x, currentPoint.x, i / dist);
+                    float lerpY = PApplet.lerp(lastPoint.y, currentPoint.y, i / dist);
+                    currentLine.addPoint(lerpX, lerpY);
+                }
+            }
+        }
+        currentLine.addPoint(x, y);
+        lastPoint = lastPointStore.set(currentPoint);
+    }
+
+    /**
+     * Completes the current line at a point.
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     */
+    public void endLine(float x, float y) {
+        if (currentLine == null) {
+            return;
+        }
+        currentLine.addPoint(x, y);
+        currentLine.completed();
+        lastPoint = null;
+    }
+
+    /**
+     * Removes the first line that passes within 5 pixels of a point.
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     */
+    public void eraseLine(float x, float y) {
+        PVector target = inputPoint.set(x, y);
+
+        for (Line line : lines) {
+            for (PVector point : line.points) {
+                if (PVector.dist(point, target) <= 5) {
+                    lines.remove(line);
+                    if (flightEvents) {
+                        GameEvents.lineRemoved(line, true, lines.size());
+                    }
+                    freeLine(line);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a line that has been removed from the board to the pool. A line still being drawn stops being drawn,
+     * since its points would otherwise keep going into a line that may be reused.
+     * @param line the line
+     */
+    private void freeLine(Line line) {
+        if (line == currentLine) {
+            currentLine = null;
+            lastPoint = null;
+        }
+        pools.free(line);
+    }
+
+    /**
+     * Applies an input event taken from an input queue, recording it if the game is being recorded. Restarts are
+     * recorded by restart, demo mode is not recorded since the automatic player's strokes are, and nothing is
+     * recorded once the game has ended.
+     * @param type the type of event, one of the constants in InputQueue
+     * @param x the x coordinate of the mouse
+     * @param y the y coordinate of the mouse
+     */
+    public void apply(int type, float x, float y) {
+        if (recorder != null && !gameEnded && type != InputQueue.RESTART && type != InputQueue.DEMO) {
+            recorder.record(type, x, y);
+        }
+
+        switch (type) {
+            case InputQueue.BEGIN_LINE:
+                beginLine(x, y);
+                break;
+            case InputQueue.DRAG_LINE:
+                dragLine(x, y);
+                break;
+            case InputQueue.END_LINE:
+                endLine(x, y);
+                break;
+            case InputQueue.ERASE_LINE:
+                eraseLine(x, y);
+                break;
+            case InputQueue.RESTART:
+                restart();
+                break;
+            case InputQueue.PAUSE:
+                togglePause();
+                break;
+            case InputQueue.DEMO:
+                demo = !demo;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Advances the game by one tick. It moves the balls, handles their collisions and hole captures,
+     * advances the timers and checks if the level has been won or lost.
+     */
+    public void tick() {
+        if (recorder != null && !gameEnded) {
+            recorder.tick();
+        }
+
+        //Stop ball movement when level ends in loss
+        if (levelEnded && (!remainingBalls.isEmpty() || this.balls.size()!=0)) {
+            for (Ball ball : this.balls) {
+                ball.setVelocity(0, 0);
+            }
+        }
+
+        //Check collisions or hole captures for each ball
+        for (int i = this.balls.size()-1; i >= 0; i--) {
+            Ball ball = this.balls.get(i);
+
+            //Check if near hole or captured
+            if (checkHole(ball) && !paused && !levelEnded) {
+                if (heatmap != null) {
+                    heatmap.holeZone(ball);
+                }
+                int colour = ball.checkHoleCapture(this.holes);
+
+                //Increase or decrease score if colour matches or doesn't match, respectively
+                if (colour!=-1) {
+                    float scoreBefore = this.score;
+                    boolean correct = colourCheck(ball, colour);
+                    if (correct) {
+                        increaseScore(ball);
+                        captures++;
+                    }
+                    else {
+                        decreaseScore(ball);
+                        wrongCaptures++;
+                        remainingBalls.enqueue(ball.getColour()); //Add ball back to queue if wrong capture
+
+                        //Spawn it straight away if the queue had already run out
+                        if (spawnTask.isDone()) {
+                            scheduleSpawn(1);
+                        }
+                    }
+                    this.balls.remove(ball); //Remove ball from board
+                    if (flightEvents) {
+                        GameEvents.capture(ball, colour, correct, this.score - scoreBefore, levelTicks);
+                    }
+                    pools.free(ball);
+                }
+            }
+            //Check for collisions if not near hole
+            else if (!paused && !levelEnded) {
+                ball.restoreSize();
+                checkAllCollisions(ball);
+                ball.update();
+                if (heatmap != null) {
+                    heatmap.travel(ball);
+                }
+            }
+        }
+
+        //Advance spawning, the countdown and animations by one tick unless paused. Spawning and the queue slide
+        //stay where they are once the level has ended
+        if (!paused) {
+            if (!levelEnded) {
+                playScheduler.tick();
+            }
+            scheduler.tick();
+            levelTicks++;
+            gameTicks++;
+        }
+
+        //If all balls captured correctly, end level
+        if (remainingBalls.isEmpty() && this.balls.size() == 0) {
+            levelEnded = true;
+            drawYellowTile(); //Start end animation
+
+            //Load next level once all time has been added to score
+            if (this.time <= 0 && !gameEnded) {
+                recordLevel();
+                emitLevel("won");
+                if (currentLevel+1<config.getLevelCount()) {
+                    currentLevel++;
+                    startingScore = this.score; //Store score to be consistent across levels
+                    if (recorder != null) {
+                        recorder.startLevel();
+                    }
+                    resetGame();
+                }
+                else {
+                    gameEnded = true; //If no levels remaining, end game
+                }
+            }
+        }
+
+        //End the level in a loss if the timer has finished
+        if (this.time == 0 && !gameEnded) {
+            if (!levelEnded) {
+                emitLevel("lost");
+            }
+            levelEnded = true;
+        }
+    }
+
+    /**
+     * Emits a flight recorder event for the level being left, unless events are turned off for this game.
+     * @param outcome "won", "lost" or "restarted"
+     */
+    private void emitLevel(String outcome) {
+        if (flightEvents) {
+            GameEvents.level(currentLevel, outcome, System.nanoTime() - levelStarted, levelTicks, this.score - startingScore, captures, wrongCaptures);
+        }
+    }
+
+    /**
+     * Records the score gained in the level that has just been won and, if it was the last level, the total
+     * score of the game. Each score refers to the replay of the game and the ticks of the replay it was gained
+     * over. The replay is saved once, when the game ends, as the game stops recording then. Nothing is recorded if
+     * the game has no score store.
+     */
+    private void recordLevel() {
+        if (scoreStore == null) {
+            return;
+        }
+        long replayId = recorder != null ? recorder.seed : ScoreStore.NO_REPLAY;
+        int levelStart = recorder != null ? recorder.getLevelStart() : 0;
+        int end = recorder != null ? recorder.getTicks() : 0;
+        scoreStore.record(currentLevel, this.score - startingScore, replayId, levelStart, end, levelTicks);
+        replayReferenced = recorder != null;
+        if (currentLevel+1 >= config.getLevelCount()) {
+            scoreStore.record(ScoreStore.TOTAL, this.score, replayId, 0, end, gameTicks);
+            if (recorder != null) {
+                scoreStore.saveReplay(recorder);
+            }
+        }
+    }
+
+    /**
+     * Saves the replay of a game that is left before it ends, if any of its scores refer to it. The replay of a
+     * game that ended was saved then.
+     */
+    public void saveUnfinishedReplay() {
+        if (scoreStore != null && recorder != null && replayReferenced && !gameEnded) {
+            scoreStore.saveReplay(recorder);
+        }
+    }
+
+    /**
+     * Checks if the colour of the ball and hole match or if it is a grey hole or a grey ball.
+     * @param ball the ball object to compare colour with
+     * @param colour the colour of the hole the ball is absorbed by
+     * @return true if it matches, false otherwise
+     */
+    public boolean colourCheck(Ball ball, int colour) {
+        if (ball.isColoured()) {
+            if (colour == 0 || ball.getColour() == colour) {
+                return true;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Increases the score by the values specified in the config file using the colour of the ball.
+     * @param ball ball object to get the colour of
+     */
+    private void increaseScore(Ball ball) {
+        float addScore = config.colours.scoreIncrease[ball.getColour()] * getLevel().scoreIncreaseModifier;
+        this.score += addScore;
+    }
+
+    /**
+     * Decreases the score by the values specified in the config file using the colour of the ball.
+     * @param ball ball object to get the colour of
+     */
+    private void decreaseScore(Ball ball) {
+        float subScore = config.colours.scoreDecrease[ball.getColour()] * getLevel().scoreDecreaseModifier;
+        this.score -= subScore;
+    }
+
+    /**
+     * Checks if ball is within the bounds of a hole.
+     * @param ball ball object to check
+     * @return true if it is within bounds, false otherwise
+     */
+    private boolean checkHole(Ball ball) {
+        return ball.isNearHole(this.holes);
+    }
+
+    /**
+     * Calls other functions to check all the collisions of the ball with lines, walls and screen edges.
+     * @param ball ball object to check
+     */
+    public void checkAllCollisions(Ball ball) {
+        //Check collision with lines
+        for (Line line : this.lines) {
+            if (ball.checkLineCollision(line.points)) {
+                this.lines.remove(line); //Remove line if collided
+                if (heatmap != null) {
+                    heatmap.lineBounce(ball);
+                }
+                if (flightEvents) {
+                    GameEvents.lineRemoved(line, false, lines.size());
+                }
+                freeLine(line);
+                return;
+            }
+        }
+
+        //Check collision with merged walls, damaging the cell that was hit
+        for (WallRect rect : this.wallGrid.getRects()) {
+            if (ball.checkWallCollision(rect)) {
+                Wall wall = rect.wallAt(ball.centrePosition);
+                int ballColour = ball.getColour();
+                if (wall.isColoured()) {
+                    //Damage the coloured wall if hit with ball of same colour
+                    if (ball.getColour() == wall.getColour() && wall.hits < 3) {
+                        wall.hits++;
+                    }
+                    ball.setColour(wall.getColour()); //Change colour of ball if collided with coloured wall
+                }
+                else if (wall.hits < 3) { //Damage grey walls with any ball
+                    wall.hits++;
+                }
+
+                //Remove wall if hit three times
+                if (wall.hits == 3) {
+                    int x = wall.getCol();
+                    int y = wall.getRow();
+                    this.board[y][x] = new Tile(x, y);
+                    this.walls.remove(wall);
+                    this.wallGrid.remove(wall); //Split the rectangle around the destroyed wall
+                }
+                if (heatmap != null) {
+                    heatmap.wallHit(wall);
+                }
+                if (flightEvents) {
+                    GameEvents.wallHit(wall, ballColour, wall.hits == 3, walls.size());
+                }
+                return;
+            }
+        }
+
+        //Check collision with screen edges
+        if (ball.checkBoundaryCollision()) {
+            return;
+        }
+    }
+
+    /**
+     * Schedules the next ball in the queue to be spawned.
+     * @param delay the number of ticks until the ball spawns
+     */
+    private void scheduleSpawn(int delay) {
+        spawnTask = playScheduler.schedule(delay, this::spawnNext);
+    }
+
+    /**
+     * Spawns the next ball in the queue, starts the queue animation and schedules the following spawn
+     * if balls are still remaining. Nothing spawns once the level has ended.
+     */
+    private void spawnNext() {
+        if (remainingBalls.isEmpty() || levelEnded) {
+            return;
+        }
+        spawnBall();
+        startQueueShift();
+
+        if (!remainingBalls.isEmpty()) {
+            scheduleSpawn(getLevel().spawnInterval*App.FPS);
+        }
+    }
+
+    /**
+     * Gets the number of ticks until a timer next changes the board: the next ball spawning, or the countdown
+     * running out and ending the level. The other steps of the countdown only change the time left and the end of
+     * the ball queue slide only changes how the queue is drawn, so they can run in the middle of skipped ticks.
+     * @return the number of ticks, or Integer.MAX_VALUE if neither will happen
+     */
+    public int ticksUntilTimerEvent() {
+        long ticks = Integer.MAX_VALUE;
+        if (spawnTask != null && !spawnTask.isDone()) {
+            ticks = spawnTask.remaining();
+        }
+        if (countdownTask != null && !countdownTask.isDone() && this.time > 0) {
+            ticks = Math.min(ticks, countdownTask.remaining() + (long) (this.time - 1) * App.FPS);
+        }
+        return (int) ticks;
+    }
+
+    /**
+     * Decrements the timer by a second, scheduled to run once every second.
+     */
+    private void countdown() {
+        if (this.time>0 && !gameEnded) {
+            this.time--;
+        }
+    }
+
+    /**
+     * Spawns a new ball from a randomly chosen spawner on the board.
+     */
+    private void spawnBall() {
+        if (!spawners.isEmpty()) {
+            int randSpawn = random.nextInt(spawners.size());
+            Spawner spawner = spawners.get(randSpawn);
+
+            int colour = remainingBalls.dequeue();
+            Ball ball = pools.ball(spawner.getX(), spawner.getY(), colour);
+            if (fixedPoint) {
+                ball.useFixedPoint();
+            }
+            ball.setVelocity(randomVelocity(), randomVelocity());
+            balls.add(ball);
+            if (flightEvents) {
+                GameEvents.spawn(ball, spawner, balls.size(), remainingBalls.size());
+            }
+        }
+    }
+
+    /**
+     * Gets a random velocity to set for a ball. It uses a random boolean and returns either 2 or -2 accordingly.
+     * @return 2 or -2 as the velocity
+     */
+    private float randomVelocity() {
+        boolean vel = random.nextBoolean();
+        if (vel) {
+            return (float) 2;
+        }
+        return (float) -2;
+    }
+
+    /**
+     * Starts moving the ball queue to the left, which ends after the balls have moved by one gap.
+     */
+    private void startQueueShift() {
+        playScheduler.cancel(shiftTask);
+        isQueueShifting = true;
+        shiftTask = playScheduler.schedule(QUEUE_SHIFT+1, () -> isQueueShifting = false);
+    }
+
+    /**
+     * Gets how far the ball queue has moved since the last ball was spawned.
+     * @return the number of pixels moved, or 0 if the queue is not moving
+     */
+    public int getQueueShift() {
+        if (!isQueueShifting) {
+            return 0;
+        }
+        return QUEUE_SHIFT + 1 - shiftTask.remaining(); //Ticks since the queue started shifting
+    }
+
+    private int[] yellowTile1 = {0, 0};
+    private int[] yellowTile2 = {COLS-1, ROWS-1};
+    private Tile originalTile1;
+    private Tile originalTile2;
+    private Wall yellowWall1 = new Wall(0, 0, 4); //Moved around the edge by the animation rather than recreated
+    private Wall yellowWall2 = new Wall(COLS-1, ROWS-1, 4);
+    private boolean initialised = false;
+
+    /**
+     * Starts the clockwise yellow tile animation when a level ends, along with adding the remaining
+     * time to the score.
+     */
+    private void drawYellowTile() {
+        //Draw yellow tiles at starting position first
+        if (!initialised) {
+            //Store original tiles
+            originalTile1 = this.board[yellowTile1[1]][yellowTile1[0]];
+            originalTile2 = this.board[yellowTile2[1]][yellowTile2[0]];
+            //Set yellow tiles in place of original tiles
+            placeYellowTiles();
+            scheduler.scheduleRepeating(END_INTERVAL, END_INTERVAL, this::endStep);
+            initialised = true;
+
+            //Build the next level's board while the animation plays
+            if (currentLevel+1 < config.getLevelCount()) {
+                prefetchedLevel = config.getLevel(currentLevel+1);
+                prefetchedConfig = config;
+                prefetched = Board.prefetch(config, prefetchedLevel, ROWS, COLS);
+            }
+        }
+    }
+
+    /**
+     * Runs one step of the level end animation. The yellow tiles move clockwise and one second of
+     * remaining time is added to the score.
+     */
+    private void endStep() {
+        if (!gameEnded) {
+            //Restore original tile
+            this.board[yellowTile1[1]][yellowTile1[0]] = originalTile1;
+            this.board[yellowTile2[1]][yellowTile2[0]] = originalTile2;
+            //Move yellow tiles' positions clockwise
+            moveYellowTile(yellowTile1);
+            moveYellowTile(yellowTile2);
+            //Store original tiles
+            originalTile1 = this.board[yellowTile1[1]][yellowTile1[0]];
+            originalTile2 = this.board[yellowTile2[1]][yellowTile2[0]];
+            //Set yellow tiles in place of original tiles
+            placeYellowTiles();
+        }
+
+        //Add remaining time to score
+        if (this.time>0) {
+            this.time--;
+            this.score++;
+        }
+    }
+
+    /**
+     * Puts the two yellow walls of the level end animation on the board at their current positions.
+     */
+    private void placeYellowTiles() {
+        yellowWall1.moveTo(yellowTile1[0], yellowTile1[1]);
+        yellowWall2.moveTo(yellowTile2[0], yellowTile2[1]);
+        this.board[yellowTile1[1]][yellowTile1[0]] = yellowWall1;
+        this.board[yellowTile2[1]][yellowTile2[0]] = yellowWall2;
+    }
+
+    /**
+     * Moves the position of the yellow tile for the level end animation clockwise around the
+     * edges.
+     * @param yellowTile the x and y position of the yellow tile in an array
+     */
+    public void moveYellowTile(int[] yellowTile) {
+        int x = yellowTile[0];
+        int y = yellowTile[1];
+
+        if (y == 0 && x < this.board[0].length - 1) {
+            yellowTile[0]++;
+        }
+        else if (x == this.board[0].length - 1 && y < this.board.length - 1) {
+            yellowTile[1]++;
+        }
+        else if (y == this.board.length - 1 && x > 0) {
+            yellowTile[0]--;
+        }
+        else if (x == 0 && y > 0) {
+            yellowTile[1]--;
+        }
+    }
+
+    public Level getLevel() {
+        return config.getLevel(currentLevel);
+    }
+
+    public Tile[][] getBoard() {
+        return this.board;
+    }
+
+    public float getScore() {
+        return this.score;
+    }
+
+    Heatmap getHeatmap() {
+        return this.heatmap;
+    }
+
+    public int getCaptures() {
+        return this.captures;
+    }
+
+    public int getWrongCaptures() {
+        return this.wrongCaptures;
+    }
+
+    /**
+     * Gets the number of ticks until the next ball is spawned.
+     * @return the number of ticks, or 0 if no spawn is scheduled
+     */
+    public int getSpawnTimer() {
+        return spawnTask.remaining();
+    }
+}
@@ -0,0 +1,189 @@
+package inkball;
+
+import jdk.jfr.*;
+
+public class GameEvents {
+
+    /**
+     * Emits an event when a ball is spawned.
+     * @param ball the ball spawned
+     * @param spawner the spawner it came from
+     * @param onBoard the number of balls on the board, including the new one
+     * @param queued the number of balls still waiting to be spawned
+     */
+    public static void spawn(Ball ball, Spawner spawner, int onBoard, int queued) {
+        BallSpawnEvent event = new BallSpawnEvent();
+        if (event.isEnabled()) {
+            event.colour = ball.getColour();
+            event.col = spawner.getX();
+            event.row = spawner.getY();
+            event.onBoard = onBoard;
+            event.queued = queued;
+            event.commit();
+        }
+    }
+
+    /**
+     * Emits an event when a ball is captured by a hole.
+     * @param ball the ball captured
+     * @param holeColour the colour of the hole
+     * @param correct whether the colours matched
+     * @param scoreChange the score gained, or lost if negative
+     * @param levelTicks the number of ticks the level has been played for
+     */
+    public static void capture(Ball ball, int holeColour, boolean correct, float scoreChange, int levelTicks) {
+        CaptureEvent event = new CaptureEvent();
+        if (event.isEnabled()) {
+            event.ballColour = ball.getColour();
+            event.holeColour = holeColour;
+            event.correct = correct;
+            event.scoreChange = scoreChange;
+            event.levelTicks = levelTicks;
+            event.commit();
+        }
+    }
+
+    /**
+     * Emits an event when a ball hits a wall.
+     * @param wall the wall hit, after its hits have been counted
+     * @param ballColour the colour of the ball before it hit the wall
+     * @param destroyed whether the hit destroyed the wall
+     * @param wallsLeft the number of walls left on the board
+     */
+    public static void wallHit(Wall wall, int ballColour, boolean destroyed, int wallsLeft) {
+        WallHitEvent event = new WallHitEvent();
+        if (event.isEnabled()) {
+            event.col = wall.getCol();
+            event.row = wall.getRow();
+            event.wallColour = wall.getColour();
+            event.ballColour = ballColour;
+            event.hits = wall.hits;
+            event.destroyed = destroyed;
+            event.wallsLeft = wallsLeft;
+            event.commit();
+        }
+    }
+
+    /**
+     * Emits an event when a line is removed, either by a ball hitting it or by the player erasing it.
+     * @param line the line removed
+     * @param erased true if the player erased it, false if a ball hit it
+     * @param linesLeft the number of lines left on the board
+     */
+    public static void lineRemoved(Line line, boolean erased, int linesLeft) {
+        LineRemovedEvent event = new LineRemovedEvent();
+        if (event.isEnabled()) {
+            event.erased = erased;
+            event.points = line.points.size();
+            event.linesLeft = linesLeft;
+            event.commit();
+        }
+    }
+
+    /**
+     * Emits an event when a level is won, lost or restarted.
+     * @param level the level
+     * @param outcome "won", "lost" or "restarted"
+     * @param wallTime the nanoseconds since the level started
+     * @param levelTicks the number of ticks the level was played for
+     * @param scoreGained the score gained in the level
+     * @param captures the number of balls captured by a hole of the right colour
+     * @param wrongCaptures the number of balls captured by a hole of the wrong colour
+     */
+    public static void level(int level, String outcome, long wallTime, int levelTicks, float scoreGained, int captures, int wrongCaptures) {
+        LevelEvent event = new LevelEvent();
+        if (event.isEnabled()) {
+            event.level = level;
+            event.outcome = outcome;
+            event.wallTime = wallTime;
+            event.levelTicks = levelTicks;
+            event.scoreGained = scoreGained;
+            event.captures = captures;
+            event.wrongCaptures = wrongCaptures;
+            event.commit();
+        }
+    }
+}
+
+
+@Name("inkball.Frame")
+@Label("Frame")
+@Category("Inkball")
+@StackTrace(false)
+@Description("One frame drawn by the game window, from the start of draw() to its end")
+class FrameEvent extends Event {
+    @Label("Frame") long frame;
+    @Label("Input Events") int inputEvents;
+    @Label("Tick Time") @Timespan(Timespan.NANOSECONDS) long tickTime;
+    @Label("Balls") int balls;
+    @Label("Lines") int lines;
+    @Label("Paused") boolean paused;
+    @Label("Quality") String quality;
+}
+
+
+@Name("inkball.BallSpawn")
+@Label("Ball Spawn")
+@Category("Inkball")
+@StackTrace(false)
+class BallSpawnEvent extends Event {
+    @Label("Colour") int colour;
+    @Label("Column") int col;
+    @Label("Row") int row;
+    @Label("Balls On Board") int onBoard;
+    @Label("Balls Queued") int queued;
+}
+
+
+@Name("inkball.Capture")
+@Label("Hole Capture")
+@Category("Inkball")
+@StackTrace(false)
+class CaptureEvent extends Event {
+    @Label("Ball Colour") int ballColour;
+    @Label("Hole Colour") int holeColour;
+    @Label("Correct") boolean correct;
+    @Label("Score Change") float scoreChange;
+    @Label("Level Ticks") int levelTicks;
+}
+
+
+@Name("inkball.WallHit")
+@Label("Wall Hit")
+@Category("Inkball")
+@StackTrace(false)
+class WallHitEvent extends Event {
+    @Label("Column") int col;
+    @Label("Row") int row;
+    @Label("Wall Colour") int wallColour;
+    @Label("Ball Colour") int ballColour;
+    @Label("Hits") int hits;
+    @Label("Destroyed") boolean destroyed;
+    @Label("Walls Left") int wallsLeft;
+}
+
+
+@Name("inkball.LineRemoved")
+@Label("Line Removed")
+@Category("Inkball")
+@StackTrace(false)
+class LineRemovedEvent extends Event {
+    @Label("Erased") boolean erased;
+    @Label("Points") int points;
+    @Label("Lines Left") int linesLeft;
+}
+
+
+@Name("inkball.Level")
+@Label("Level Transition")
+@Category("Inkball")
+@StackTrace(false)
+class LevelEvent extends Event {
+    @Label("Level") int level;
+    @Label("Outcome") String outcome;
+    @Label("Wall Time") @Timespan(Timespan.NANOSECONDS) long wallTime;
+    @Label("Level Ticks") int levelTicks;
+    @Label("Score Gained") float scoreGained;
+    @Label("Captures") int captures;
+    @Label("Wrong Captures") int wrongCaptures;
+}
@@ -0,0 +1,555 @@
+package inkball;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+public class GameServer {
+
+    public static final int QUIT = 127; //Input type a client sends to leave
+    public static final byte STATUS = 1;
+    public static final byte RESULT = 2;
+    static final int STATUS_INTERVAL = App.FPS; //Ticks between status messages to a client
+
+    public final Config config;
+    private TickClock clock = new TickClock();
+    private ExecutorService sessionThreads;
+    private ExecutorService readers; //Threads blocked reading player input
+    private boolean virtual;
+    private ConcurrentHashMap<Integer, GameSession> sessions = new ConcurrentHashMap<>();
+    private AtomicInteger nextId = new AtomicInteger();
+    private Random seeds = new Random();
+    private File replayDirectory;
+    public final Analytics analytics = new Analytics(); //Counts of every finished session, merged when each ends
+    public boolean fixedPoint = Boolean.getBoolean("inkball.fixedPoint"); //Plays and checks games with fixed point physics
+
+    /**
+     * Constructor that creates a server hosting many independent game sessions. Every session shares the same
+     * configuration, which is never changed once loaded, and is advanced by the same clock. Each session runs on
+     * its own virtual thread when the JVM supports them. Otherwise the sessions due on each tick are run by a
+     * pool with one thread per core.
+     * @param config the configuration shared by every session
+     * @param replayDirectory where replays of finished games are saved, or null to not save them
+     */
+    public GameServer(Config config, File replayDirectory) {
+        this.config = config;
+        this.replayDirectory = replayDirectory;
+
+        sessionThreads = virtualThreadExecutor();
+        virtual = sessionThreads != null;
+        if (!virtual) {
+            sessionThreads = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "session");
+                thread.setDaemon(true);
+                return thread;
+            });
+            clock.setListener(this::stepAll);
+            readers = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "session-reader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        else {
+            readers = sessionThreads;
+        }
+        clock.start();
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread for each task. Virtual threads only exist from Java 21,
+     * so the executor is looked up by reflection to keep the game building on older versions.
+     * @return the executor, or null if virtual threads are not available
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts a new session.
+     * @param level the level to start on
+     * @param client the connection to the player, or null for a session driven only through its input queue
+     * @return the session
+     */
+    public GameSession start(int level, Socket client) {
+        long seed;
+        synchronized (seeds) {
+            seed = seeds.nextLong();
+        }
+        GameSession session = new GameSession(this, nextId.getAndIncrement(), config, seed, level, client);
+        sessions.put(session.id, session);
+
+        //With virtual threads each session waits for the clock on its own thread
+        if (virtual) {
+            sessionThreads.execute(() -> {
+                long tick = clock.getTick();
+                while (!session.isFinished()) {
+                    try {
+                        tick = clock.await(tick);
+                    }
+                    catch (InterruptedException e) {
+                        break;
+                    }
+                    session.step(tick);
+                }
+            });
+        }
+        return session;
+    }
+
+    /**
+     * Runs every session due on a tick on the pool, used when virtual threads are not available. A session that
+     * is still running its last step is left to catch up on the next tick.
+     * @param tick the tick of the clock
+     */
+    private void stepAll(long tick) {
+        for (GameSession session : sessions.values()) {
+            if (session.tryClaim()) {
+                sessionThreads.execute(() -> session.stepClaimed(tick));
+            }
+        }
+    }
+
+    /**
+     * Removes a finished session, adds its counts to the analytics and saves its replay if every level was
+     * completed.
+     * @param session the session that finished
+     */
+    void finished(GameSession session) {
+        sessions.remove(session.id);
+        analytics.merge(session.game.analytics);
+        if (replayDirectory != null && session.game.gameEnded) {
+            File file = new File(replayDirectory, session.game.seed + ".replay");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                session.replay.write(out);
+            }
+            catch (IOException e) {
+                System.err.println("Could not save replay " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Accepts players on a loopback port until the server is stopped. Each player sends the level to start on,
+     * then a stream of input events, and receives the seed of its game, regular status messages and a result.
+     * @param port the port to listen on
+     */
+    public void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            System.out.println("Listening on " + server.getLocalSocketAddress() + (virtual ? " with virtual threads" : " with a thread pool"));
+
+            while (true) {
+                Socket client = server.accept();
+                client.setTcpNoDelay(true);
+                readers.execute(() -> read(client));
+            }
+        }
+    }
+
+    /**
+     * Reads a player's input and passes it to their session's input queue.
+     * @param client the connection to the player
+     */
+    private void read(Socket client) {
+        GameSession session = null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            session = start(in.readInt(), client);
+            while (!session.isFinished()) {
+                int type = in.readByte();
+                if (type == QUIT) {
+                    break;
+                }
+                session.input.offer(type, in.readFloat(), in.readFloat());
+            }
+        }
+        catch (IOException e) {
+            //The player has gone
+        }
+        finally {
+            if (session != null) {
+                session.quit();
+            }
+        }
+    }
+
+    public int getSessions() {
+        return this.sessions.size();
+    }
+
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    /**
+     * Stops the clock and every session.
+     */
+    public void stop() {
+        clock.stop();
+        sessionThreads.shutdownNow();
+        readers.shutdownNow();
+    }
+
+    /**
+     * Runs the server, or with "bench" as the first argument, measures how many sessions fit on one core.
+     * Server arguments are the configuration file, the port and the replay directory. Benchmark arguments are
+     * the configuration file, the number of sessions and the number of seconds to run for.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench(Config.load(args.length > 1 ? args[1] : "config.json"), args.length > 2 ? Integer.parseInt(args[2]) : 1000,
+                args.length > 3 ? Integer.parseInt(args[3]) : 10);
+            return;
+        }
+
+        Config config = Config.load(args.length > 0 ? args[0] : "config.json");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7100;
+        File replays = new File(args.length > 2 ? args[2] : "replays");
+        if (!replays.isDirectory() && !replays.mkdirs()) {
+            throw new IOException("Could not create " + replays);
+        }
+        GameServer server = new GameServer(config, replays);
+
+        //Add the heatmaps of every session to the saved ones when the server is stopped
+        File analytics = new File(replays, "analytics");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.analytics.save(analytics);
+            }
+            catch (IOException e) {
+                System.err.println("Could not save analytics to " + analytics + ": " + e.getMessage());
+            }
+        }));
+        server.listen(port);
+    }
+
+    /**
+     * Runs many sessions at once, each with a line drawn every few seconds, and reports the time spent per
+     * session tick, how many sessions one core could run at the full frame rate and how many ticks were late.
+     * @param config the configuration to play
+     * @param count the number of sessions
+     * @param seconds how long to run for
+     */
+    private static void bench(Config config, int count, int seconds) throws InterruptedException {
+        GameServer server = new GameServer(config, null);
+        ArrayList<GameSession> started = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            GameSession session = server.start(i % config.getLevelCount(), null);
+            session.drawEvery = 90 + i % 60;
+            started.add(session);
+        }
+
+        Thread.sleep(seconds * 1000L);
+        server.stop();
+
+        long steps = 0;
+        long nanos = 0;
+        long late = 0;
+        for (GameSession session : started) {
+            steps += session.getSteps();
+            nanos += session.getStepNanos();
+            late += session.getLateTicks();
+        }
+        double perStep = nanos / (double) Math.max(1, steps);
+        double budget = 1e9 / App.FPS;
+        System.out.println(String.format("%d sessions on %s for %ds: %d steps, %.1f us per session tick, %d late ticks",
+            count, server.isVirtual() ? "virtual threads" : "a thread pool", seconds, steps, perStep / 1000, late));
+        System.out.println(String.format("About %.0f sessions per core at %d ticks per second", budget / perStep, App.FPS));
+    }
+}
+
+
+class GameSession {
+
+    private static final int MAX_CATCH_UP = 5; //Most ticks a late session runs at once to catch up
+
+    public final int id;
+    public final Game game;
+    public final InputQueue input = new InputQueue();
+    public final Replay replay;
+    int drawEvery = 0; //Ticks between lines drawn automatically, used for benchmarks
+    private float strokeX;
+    private float strokeY;
+    private GameServer server;
+    private Socket client;
+    private DataOutputStream out;
+    private long lastTick = -1;
+    private AtomicBoolean claimed = new AtomicBoolean();
+    private volatile boolean finished = false;
+    private AtomicLong steps = new AtomicLong();
+    private AtomicLong stepNanos = new AtomicLong();
+    private AtomicLong lateTicks = new AtomicLong();
+
+    /**
+     * Constructor that sets up a session with its own game, recording all the input it applies.
+     * @param server the server hosting the session
+     * @param id the id of the session
+     * @param config the shared configuration
+     * @param seed the seed of the game
+     * @param level the level to start on
+     * @param client the connection to the player, or null if there is none
+     */
+    public GameSession(GameServer server, int id, Config config, long seed, int level, Socket client) {
+        this.server = server;
+        this.id = id;
+        this.client = client;
+        this.game = new Game(config, seed);
+        this.replay = new Replay(seed, level);
+        game.fixedPoint = server.fixedPoint;
+        replay.fixedPoint = game.fixedPoint;
+        game.currentLevel = Math.max(0, Math.min(level, config.getLevelCount()-1));
+        game.recorder = replay;
+        game.analytics = new Analytics(); //Counted on the session's own thread, so the counts need no locking
+        game.resetGame();
+
+        if (client != null) {
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+                out.writeLong(seed);
+                out.writeInt(id);
+                out.flush();
+            }
+            catch (IOException e) {
+                finished = true;
+            }
+        }
+    }
+
+    /**
+     * Claims the session for a step, so it is only ever stepped by one thread at a time.
+     * @return true if claimed, false if a step is already running
+     */
+    boolean tryClaim() {
+        return !finished && claimed.compareAndSet(false, true);
+    }
+
+    /**
+     * Runs a step that was claimed with tryClaim.
+     * @param tick the tick of the clock
+     */
+    void stepClaimed(long tick) {
+        try {
+            step(tick);
+        }
+        finally {
+            claimed.set(false);
+        }
+    }
+
+    /**
+     * Advances the game to a tick of the shared clock, applying the input received since the last step. A session
+     * that has fallen behind runs a few ticks at once to catch up.
+     * @param tick the tick of the clock
+     */
+    public void step(long tick) {
+        if (finished) {
+            return;
+        }
+        long start = System.nanoTime();
+        int due = lastTick < 0 ? 1 : (int) Math.min(tick - lastTick, MAX_CATCH_UP);
+        if (lastTick >= 0 && tick - lastTick > 1) {
+            lateTicks.addAndGet(tick - lastTick - 1);
+        }
+        lastTick = tick;
+
+        for (int i = 0; i < due && !finished; i++) {
+            if (drawEvery > 0) {
+                drawLine();
+            }
+            input.drain(game);
+            game.tick();
+
+            if (out != null && replay.getTicks() % GameServer.STATUS_INTERVAL == 0) {
+                sendStatus();
+            }
+            if (game.gameEnded) {
+                end();
+            }
+        }
+        steps.addAndGet(due);
+        stepNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * Queues a random line every few ticks, standing in for a player in benchmarks. Like a mouse, the line is
+     * started on one tick and finished on the next.
+     */
+    private void drawLine() {
+        int phase = replay.getTicks() % drawEvery;
+        if (phase == 0) {
+            Random random = new Random(game.seed ^ replay.getTicks());
+            strokeX = 64 + random.nextInt(App.WIDTH - 128);
+            strokeY = App.TOPBAR + 64 + random.nextInt(App.HEIGHT - App.TOPBAR - 128);
+            input.offer(InputQueue.BEGIN_LINE, strokeX, strokeY);
+            input.offer(InputQueue.DRAG_LINE, strokeX, strokeY);
+        }
+        else if (phase == 1) {
+            input.offer(InputQueue.DRAG_LINE, strokeX + 48, strokeY + 16);
+            input.offer(InputQueue.END_LINE, strokeX + 48, strokeY + 16);
+        }
+    }
+
+    /**
+     * Sends the tick, score, time and level to the player.
+     */
+    private void sendStatus() {
+        try {
+            out.writeByte(GameServer.STATUS);
+            out.writeInt(replay.getTicks());
+            out.writeFloat(game.getScore());
+            out.writeShort(game.time);
+            out.writeByte(game.currentLevel);
+            out.flush();
+        }
+        catch (IOException e) {
+            quit();
+        }
+    }
+
+    /**
+     * Ends the session once every level is finished. The score is checked by replaying the recorded input from
+     * the seed, and the result is sent to the player.
+     */
+    private void end() {
+        boolean valid = replay.validate(game.config, game.getScore());
+        if (out != null) {
+            try {
+                out.writeByte(GameServer.RESULT);
+                out.writeFloat(game.getScore());
+                out.writeBoolean(valid);
+                out.flush();
+            }
+            catch (IOException e) {
+                //The player has gone, the session ends anyway
+            }
+        }
+        quit();
+    }
+
+    /**
+     * Ends the session and closes the connection to the player.
+     */
+    public void quit() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (client != null) {
+            try {
+                client.close();
+            }
+            catch (IOException e) {
+                //Already closed
+            }
+        }
+        server.finished(this);
+    }
+
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+    public long getSteps() {
+        return this.steps.get();
+    }
+
+    public long getStepNanos() {
+        return this.stepNanos.get();
+    }
+
+    public long getLateTicks() {
+        return this.lateTicks.get();
+    }
+}
+
+
+class TickClock {
+
+    private ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tick-clock");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ReentrantLock lock = new ReentrantLock();
+    private Condition ticked = lock.newCondition();
+    private volatile long tick = 0;
+    private LongConsumer listener;
+
+    /**
+     * Sets a function called on the clock thread on every tick.
+     * @param listener the function, given the tick
+     */
+    public void setListener(LongConsumer listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts ticking at the frame rate of the game.
+     */
+    public void start() {
+        timer.scheduleAtFixedRate(this::advance, 0, 1_000_000_000L / App.FPS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Advances the clock by one tick and wakes every thread waiting for it.
+     */
+    private void advance() {
+        lock.lock();
+        try {
+            tick++;
+            ticked.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+        if (listener != null) {
+            listener.accept(tick);
+        }
+    }
+
+    /**
+     * Waits until the clock has passed a tick.
+     * @param after the last tick seen
+     * @return the current tick
+     */
+    public long await(long after) throws InterruptedException {
+        lock.lock();
+        try {
+            while (tick <= after) {
+                ticked.await();
+            }
+            return tick;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public long getTick() {
+        return this.tick;
+    }
+
+    /**
+     * Stops the clock.
+     */
+    public void stop() {
+        timer.shutdownNow();
+    }
+}
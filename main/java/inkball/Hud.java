@@ -0,0 +1,196 @@
+package inkball;
+
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+public class Hud {
+
+    private static final String GLYPHS = "0123456789-.: ScoreTim";
+
+    private App app;
+    private PGraphics layer;
+    private GlyphRun large;
+    private GlyphRun small;
+    private char[] chars = new char[32]; //Reused for each run of text drawn
+    private boolean dirty = true;
+
+    //Values currently drawn on the layer
+    private int score;
+    private int time;
+    private int spawnTenths; //Tenths of a second until the next spawn, or -1 if no balls are left to spawn
+    private boolean timesUp;
+    private boolean paused;
+    private boolean ended;
+
+    /**
+     * Constructor that creates the top bar as a layer of its own. The layer is only drawn again when one of the
+     * values shown on it changes, which is a few times a second, and is copied onto the window every frame.
+     * Text that changes is drawn from glyphs rendered once here rather than formatted and rasterised each time.
+     * @param app the window the top bar is drawn on
+     */
+    public Hud(App app) {
+        this.app = app;
+        this.layer = app.createGraphics(App.WIDTH, App.TOPBAR);
+        this.large = new GlyphRun(app, GLYPHS, 21);
+        this.small = new GlyphRun(app, GLYPHS, 15);
+    }
+
+    /**
+     * Draws the top bar for the current state of a game, drawing the layer again first if anything shown on it
+     * has changed.
+     * @param game the game being played
+     */
+    public void draw(Game game) {
+        int score = (int) game.getScore();
+        int time = game.time;
+        int spawnTenths = game.remainingBalls.isEmpty() ? -1 : (game.getSpawnTimer()*10 + App.FPS/2) / App.FPS;
+        boolean timesUp = game.time == 0 && !game.gameEnded;
+
+        if (score != this.score || time != this.time || spawnTenths != this.spawnTenths || timesUp != this.timesUp
+            || game.paused != this.paused || game.gameEnded != this.ended) {
+            dirty = true;
+        }
+        if (dirty) {
+            this.score = score;
+            this.time = time;
+            this.spawnTenths = spawnTenths;
+            this.timesUp = timesUp;
+            this.paused = game.paused;
+            this.ended = game.gameEnded;
+            render();
+            dirty = false;
+        }
+        app.image(layer, 0, 0);
+    }
+
+    /**
+     * Draws the layer again with the values last seen.
+     */
+    private void render() {
+        layer.beginDraw();
+        layer.clear();
+
+        //Display score and timer
+        large.draw(layer, chars, append(chars, append(chars, 0, "Score: "), score), App.WIDTH-135, App.TOPBAR-34);
+        large.draw(layer, chars, append(chars, append(chars, 0, "Time: "), time), App.WIDTH-135, App.TOPBAR-8);
+
+        //Display the status of the level, which only changes a few times in a level
+        layer.textSize(21);
+        layer.fill(0);
+        if (timesUp) {
+            layer.text("=== TIME'S UP ===", 200, App.TOPBAR-20);
+        }
+        if (paused) {
+            layer.text("*** PAUSED ***", 210, App.TOPBAR-20);
+        }
+        if (ended) {
+            layer.text("=== ENDED ===", 200, App.TOPBAR-20);
+        }
+
+        //Display black bar in top left
+        layer.image(app.getSprite("bar"), 10, 17);
+
+        //Display spawn timer if balls still left to be spawned
+        if (spawnTenths >= 0) {
+            int length = append(chars, 0, spawnTenths / 10);
+            chars[length++] = '.';
+            chars[length++] = (char) ('0' + spawnTenths % 10);
+            small.draw(layer, chars, length, 145, 37);
+        }
+
+        layer.endDraw();
+    }
+
+    /**
+     * Writes text into a buffer of characters.
+     * @param chars the buffer
+     * @param at the index to write from
+     * @param text the text to write
+     * @return the index after the text
+     */
+    private static int append(char[] chars, int at, String text) {
+        text.getChars(0, text.length(), chars, at);
+        return at + text.length();
+    }
+
+    /**
+     * Writes a number in decimal into a buffer of characters without creating a string.
+     * @param chars the buffer
+     * @param at the index to write from
+     * @param value the number to write
+     * @return the index after the number
+     */
+    private static int append(char[] chars, int at, int value) {
+        long number = value;
+        if (number < 0) {
+            chars[at++] = '-';
+            number = -number;
+        }
+        int digits = 1;
+        for (long rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = at + digits - 1; i >= at; i--) {
+            chars[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        return at + digits;
+    }
+}
+
+
+class GlyphRun {
+
+    private PImage[] glyphs = new PImage[128];
+    private float[] advances = new float[128];
+    private float ascent;
+
+    /**
+     * Constructor that renders each character of a set once, in black at one text size, so runs of those
+     * characters can be drawn by copying images.
+     * @param app the window, used to create the images
+     * @param characters the characters to render
+     * @param size the text size
+     */
+    public GlyphRun(App app, String characters, float size) {
+        PGraphics measure = app.createGraphics(1, 1);
+        measure.beginDraw();
+        measure.textSize(size);
+        ascent = measure.textAscent();
+        int height = (int) Math.ceil(ascent + measure.textDescent());
+
+        for (char c : characters.toCharArray()) {
+            advances[c] = measure.textWidth(c);
+            if (c == ' ') {
+                continue;
+            }
+            PGraphics glyph = app.createGraphics((int) Math.ceil(advances[c]) + 2, height);
+            glyph.beginDraw();
+            glyph.clear();
+            glyph.textSize(size);
+            glyph.fill(0);
+            glyph.text(c, 0, ascent);
+            glyph.endDraw();
+            glyphs[c] = glyph;
+        }
+        measure.endDraw();
+    }
+
+    /**
+     * Draws a run of characters with its baseline starting at a point, like text() would.
+     * @param target where to draw the characters
+     * @param chars the characters, each of which must have been rendered
+     * @param length the number of characters to draw
+     * @param x the x coordinate of the start of the baseline
+     * @param y the y coordinate of the baseline
+     */
+    public void draw(PGraphics target, char[] chars, int length, float x, float y) {
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (glyphs[c] != null) {
+                target.image(glyphs[c], x, y - ascent);
+            }
+            x += advances[c];
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package inkball;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InputQueue {
+
+    public static final int BEGIN_LINE = 0;
+    public static final int DRAG_LINE = 1;
+    public static final int END_LINE = 2;
+    public static final int ERASE_LINE = 3;
+    public static final int RESTART = 4;
+    public static final int PAUSE = 5;
+    public static final int DEMO = 6;
+
+    private int[] types;
+    private float[] xs;
+    private float[] ys;
+    private int mask;
+    private AtomicLong head = new AtomicLong(); //Next event to read, only written by the game thread
+    private AtomicLong tail = new AtomicLong(); //Next slot to write, only written by the input thread
+    private long dropped = 0;
+
+    /**
+     * Constructor that creates a queue holding 1024 input events.
+     */
+    public InputQueue() {
+        this(1024);
+    }
+
+    /**
+     * Constructor that creates a lock-free ring buffer of input events with one thread adding events and one thread
+     * reading them. The capacity is rounded up to a power of two.
+     * @param capacity the number of events the queue can hold
+     */
+    public InputQueue(int capacity) {
+        int rounded = 1;
+        while (rounded < capacity) {
+            rounded <<= 1;
+        }
+        types = new int[rounded];
+        xs = new float[rounded];
+        ys = new float[rounded];
+        mask = rounded - 1;
+    }
+
+    /**
+     * Adds an input event to the queue. This is called from the thread that receives mouse and key events.
+     * @param type the type of event
+     * @param x the x coordinate of the mouse
+     * @param y the y coordinate of the mouse
+     * @return true if added, false if the queue was full and the event was dropped
+     */
+    public boolean offer(int type, float x, float y) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped++;
+            return false;
+        }
+        int slot = (int) (t & mask);
+        types[slot] = type;
+        xs[slot] = x;
+        ys[slot] = y;
+        tail.lazySet(t + 1); //Publish the event after its fields are written
+        return true;
+    }
+
+    /**
+     * Applies every queued event to a game in order, once per tick on the game thread. A drag followed directly by
+     * another drag is skipped, since the game fills in the points between the two anyway.
+     * @param game the game to apply the events to
+     * @return the number of events applied
+     */
+    public int drain(Game game) {
+        long h = head.get();
+        long t = tail.get();
+        int applied = 0;
+
+        while (h < t) {
+            int slot = (int) (h & mask);
+            int type = types[slot];
+            float x = xs[slot];
+            float y = ys[slot];
+            h++;
+
+            //Coalesce consecutive drag samples into the last one
+            if (type == DRAG_LINE && h < t && types[(int) (h & mask)] == DRAG_LINE) {
+                continue;
+            }
+            game.apply(type, x, y);
+            applied++;
+        }
+        head.lazySet(h); //Free the slots for the input thread
+        return applied;
+    }
+
+    /**
+     * Gets the number of events waiting to be applied.
+     * @return the number of events
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public long getDropped() {
+        return this.dropped;
+    }
+}
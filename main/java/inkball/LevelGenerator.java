@@ -0,0 +1,430 @@
+package inkball;
+
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class LevelGenerator {
+
+    private static final int SIMULATIONS = 16; //Headless games run to validate each layout
+    private static final int TIME = 120;
+    private static final int SPAWN_INTERVAL = 8;
+    private static final int BALLS = 6;
+    private static final float MIN_CAPTURE_RATE = 0.05f; //Below this balls almost never reach a hole
+    private static final float MAX_CAPTURE_RATE = 0.6f; //Above this the level plays itself
+    private static final float MAX_WRONG_RATE = 0.5f; //Above this most captures cost points without any lines
+    private static final int MAX_ATTEMPTS = 500; //Candidates generated per level asked for before giving up
+
+    private Random random;
+    private Config base;
+    private ExecutorService pool;
+
+    private char[][] cells;
+    private boolean[][] used;
+    private ArrayList<int[]> holeCells = new ArrayList<>();
+    private ArrayList<int[]> spawnerCells = new ArrayList<>();
+    private ArrayList<Integer> holeColours = new ArrayList<>();
+
+    /**
+     * Constructor that creates a level generator. The same seed always generates the same levels.
+     * @param seed the seed for the layouts and the validation games
+     * @param base the configuration whose score values the generated levels use
+     * @param pool the threads the validation games are run on
+     */
+    public LevelGenerator(long seed, Config base, ExecutorService pool) {
+        this.random = new Random(seed);
+        this.base = base;
+        this.pool = pool;
+    }
+
+    /**
+     * Generates a random level. It has a border of walls with some coloured sections, a few wall segments
+     * inside, 2 to 4 holes, 1 or 2 spawners and up to 2 starting balls. Balls are only given colours that have
+     * a matching hole, or any colour if there is a grey hole.
+     * @return the level, with its layout rows set
+     */
+    public Level generate() {
+        cells = new char[Game.ROWS][Game.COLS];
+        used = new boolean[Game.ROWS][Game.COLS];
+        holeCells.clear();
+        spawnerCells.clear();
+        holeColours.clear();
+
+        //Border of walls
+        for (int i = 0; i < Game.ROWS; i++) {
+            Arrays.fill(cells[i], ' ');
+            for (int i2 = 0; i2 < Game.COLS; i2++) {
+                if (i == 0 || i2 == 0 || i == Game.ROWS-1 || i2 == Game.COLS-1) {
+                    cells[i][i2] = 'X';
+                    used[i][i2] = true;
+                }
+            }
+        }
+
+        //Coloured sections of the border
+        int sections = random.nextInt(3);
+        for (int i = 0; i < sections; i++) {
+            char colour = wallColour();
+            int start = 1 + random.nextInt(Game.COLS - 6);
+            int row = random.nextBoolean() ? 0 : Game.ROWS-1;
+            for (int i2 = start; i2 < start + 4; i2++) {
+                cells[row][i2] = colour;
+            }
+        }
+
+        //Holes, kept a cell apart so balls can move between them
+        int holes = 2 + random.nextInt(3);
+        for (int attempt = 0; attempt < 200 && holeCells.size() < holes; attempt++) {
+            int row = 1 + random.nextInt(Game.ROWS - 3);
+            int col = 1 + random.nextInt(Game.COLS - 3);
+            if (isFree(row-1, col-1, 4, 4, true)) {
+                int colour = random.nextInt(base.colours.size());
+                cells[row][col] = 'H';
+                cells[row][col+1] = Colours.toChar(colour);
+                mark(row, col, 2, 2);
+                holeCells.add(new int[] {row, col});
+                holeColours.add(colour);
+            }
+        }
+
+        //Wall segments inside the border
+        int segments = 3 + random.nextInt(5);
+        for (int i = 0; i < segments; i++) {
+            boolean horizontal = random.nextBoolean();
+            int length = 2 + random.nextInt(3);
+            int rows = horizontal ? 1 : length;
+            int cols = horizontal ? length : 1;
+            int row = 2 + random.nextInt(Game.ROWS - 3 - rows);
+            int col = 2 + random.nextInt(Game.COLS - 3 - cols);
+            if (isFree(row-1, col-1, rows+2, cols+2, false)) {
+                char colour = random.nextInt(3) == 0 ? wallColour() : 'X';
+                for (int r = row; r < row + rows; r++) {
+                    for (int c = col; c < col + cols; c++) {
+                        cells[r][c] = colour;
+                    }
+                }
+                mark(row, col, rows, cols);
+            }
+        }
+
+        //Spawners
+        int spawners = 1 + random.nextInt(2);
+        for (int attempt = 0; attempt < 200 && spawnerCells.size() < spawners; attempt++) {
+            int row = 1 + random.nextInt(Game.ROWS - 2);
+            int col = 1 + random.nextInt(Game.COLS - 2);
+            if (isFree(row, col, 1, 1, false)) {
+                cells[row][col] = 'S';
+                mark(row, col, 1, 1);
+                spawnerCells.add(new int[] {row, col});
+            }
+        }
+
+        //Starting balls take up two characters of the layout
+        int startingBalls = random.nextInt(3);
+        for (int attempt = 0; attempt < 200 && startingBalls > 0; attempt++) {
+            int row = 1 + random.nextInt(Game.ROWS - 2);
+            int col = 1 + random.nextInt(Game.COLS - 3);
+            if (isFree(row, col, 1, 2, false)) {
+                cells[row][col] = 'B';
+                cells[row][col+1] = Colours.toChar(ballColour());
+                mark(row, col, 1, 2);
+                startingBalls--;
+            }
+        }
+
+        String[] lines = new String[Game.ROWS];
+        for (int i = 0; i < Game.ROWS; i++) {
+            lines[i] = new String(cells[i]);
+        }
+
+        int[] balls = new int[BALLS];
+        for (int i = 0; i < balls.length; i++) {
+            balls[i] = ballColour();
+        }
+
+        Level level = new Level("generated.txt", TIME, SPAWN_INTERVAL, 1, 1, balls);
+        level.layoutLines = lines;
+        return level;
+    }
+
+    /**
+     * Checks if a rectangle of cells is inside the board and not used yet.
+     * @param row the top row of the rectangle
+     * @param col the left column of the rectangle
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param allowBorder whether the rectangle may overlap the border walls
+     * @return true if every cell is free
+     */
+    private boolean isFree(int row, int col, int rows, int cols, boolean allowBorder) {
+        for (int r = row; r < row + rows; r++) {
+            for (int c = col; c < col + cols; c++) {
+                if (r < 0 || c < 0 || r >= Game.ROWS || c >= Game.COLS) {
+                    return false;
+                }
+                boolean border = r == 0 || c == 0 || r == Game.ROWS-1 || c == Game.COLS-1;
+                if (used[r][c] && !(allowBorder && border)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks a rectangle of cells as used.
+     * @param row the top row of the rectangle
+     * @param col the left column of the rectangle
+     * @param rows the number of rows
+     * @param cols the number of columns
+     */
+    private void mark(int row, int col, int rows, int cols) {
+        for (int r = row; r < row + rows; r++) {
+            for (int c = col; c < col + cols; c++) {
+                used[r][c] = true;
+            }
+        }
+    }
+
+    /**
+     * Picks a ball colour that can be captured by one of the holes.
+     * @return the colour
+     */
+    private int ballColour() {
+        if (holeColours.contains(0)) {
+            return random.nextInt(base.colours.size());
+        }
+        return holeColours.get(random.nextInt(holeColours.size()));
+    }
+
+    /**
+     * Picks the character of a coloured wall.
+     * @return the character, or X for a grey wall if there are no other colours
+     */
+    private char wallColour() {
+        int colours = base.colours.size() - 1;
+        if (colours == 0) {
+            return 'X';
+        }
+        return Colours.toChar(1 + random.nextInt(colours));
+    }
+
+    /**
+     * Checks that a ball from every spawner can reach every hole by moving through empty cells.
+     * @return true if every hole can be reached
+     */
+    private boolean holesReachable() {
+        if (holeCells.isEmpty() || spawnerCells.isEmpty()) {
+            return false;
+        }
+
+        for (int[] spawner : spawnerCells) {
+            boolean[][] seen = new boolean[Game.ROWS][Game.COLS];
+            ArrayDeque<int[]> queue = new ArrayDeque<>();
+            queue.add(spawner);
+            seen[spawner[0]][spawner[1]] = true;
+
+            while (!queue.isEmpty()) {
+                int[] cell = queue.poll();
+                int[][] next = {{cell[0]+1, cell[1]}, {cell[0]-1, cell[1]}, {cell[0], cell[1]+1}, {cell[0], cell[1]-1}};
+                for (int[] n : next) {
+                    if (n[0] >= 0 && n[1] >= 0 && n[0] < Game.ROWS && n[1] < Game.COLS && !seen[n[0]][n[1]]
+                        && !isWall(n[0], n[1])) {
+                        seen[n[0]][n[1]] = true;
+                        queue.add(n);
+                    }
+                }
+            }
+
+            for (int[] hole : holeCells) {
+                if (!seen[hole[0]][hole[1]]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a cell of the layout is a wall, by the same rule the board is built with. Colour characters are
+     * walls unless they are the colour of a hole or ball.
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return true if the cell is a wall
+     */
+    private boolean isWall(int row, int col) {
+        char c = cells[row][col];
+        if (c == 'X') {
+            return true;
+        }
+        if (base.colours.wallColour(c) > 0) {
+            return col == 0 || (cells[row][col-1] != 'H' && cells[row][col-1] != 'B');
+        }
+        return false;
+    }
+
+    /**
+     * Checks a generated level. Every hole must be reachable from every spawner, then the level is played by
+     * many headless games in parallel with no lines drawn. Without any help from the player, some balls should
+     * still find the right hole, but not so many that the level plays itself.
+     * @param level the level to check
+     * @return the results of the games, which say whether the level passed
+     */
+    public Validation validate(Level level) throws InterruptedException {
+        if (!holesReachable()) {
+            return new Validation(false, 0, 0);
+        }
+
+        Config config = new Config();
+        config.levels.add(level);
+        config.colours = base.colours;
+
+        //Each game has its own seed so they try different spawners and directions
+        ArrayList<Callable<int[]>> games = new ArrayList<>();
+        for (int i = 0; i < SIMULATIONS; i++) {
+            long seed = random.nextLong();
+            games.add(() -> {
+                Game game = new Game(config, seed);
+                game.flightEvents = false; //Validation games are not recorded by the flight recorder
+                game.resetGame();
+                new EventSimulator(game).run(TIME * App.FPS);
+                return new int[] {game.getCaptures(), game.getWrongCaptures()};
+            });
+        }
+
+        //Balls in the queue plus the ones placed in the layout
+        int total = level.balls.length;
+        for (String line : level.layoutLines) {
+            total += line.chars().filter(c -> c == 'B').count();
+        }
+
+        int captures = 0;
+        int wrong = 0;
+        int spawned = 0;
+        try {
+            for (Future<int[]> result : pool.invokeAll(games)) {
+                int[] counts = result.get();
+                captures += counts[0];
+                wrong += counts[1];
+                spawned += total;
+            }
+        }
+        catch (ExecutionException e) {
+            return new Validation(false, 0, 0); //A layout that crashes the game never passes
+        }
+
+        float captureRate = captures / (float) spawned;
+        float wrongRate = captures + wrong == 0 ? 0 : wrong / (float) (captures + wrong);
+        boolean passed = captureRate >= MIN_CAPTURE_RATE && captureRate <= MAX_CAPTURE_RATE && wrongRate <= MAX_WRONG_RATE;
+        return new Validation(passed, captureRate, wrongRate);
+    }
+
+    /**
+     * Generates levels until enough pass validation and writes their layouts to a directory, along with a
+     * configuration file listing them. If too few candidates pass, for example because the base configuration's
+     * colours make every level too easy or too hard, it stops after a set number of attempts per level and exits
+     * with status 1 without writing anything. Arguments are the base configuration file, the output directory,
+     * the number of levels and the seed.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String configPath = args.length > 0 ? args[0] : "config.json";
+        File directory = new File(args.length > 1 ? args[1] : "generated");
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+
+        Config base = Config.load(configPath);
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        LevelGenerator generator = new LevelGenerator(seed, base, pool);
+
+        ArrayList<Level> levels = new ArrayList<>();
+        int attempts = 0;
+        int maxAttempts = MAX_ATTEMPTS * count;
+        try {
+            while (levels.size() < count && attempts < maxAttempts) {
+                Level level = generator.generate();
+                Validation validation = generator.validate(level);
+                attempts++;
+                if (!validation.passed) {
+                    continue;
+                }
+
+                levels.add(level);
+                System.out.println(String.format("level%d.txt: capture rate %.2f, wrong rate %.2f", levels.size(),
+                    validation.captureRate, validation.wrongRate));
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        if (levels.size() < count) {
+            System.err.println("Only " + levels.size() + " of " + count + " levels passed validation after " + attempts
+                + " attempts, so nothing was written. Try another base configuration or seed.");
+            System.exit(1);
+        }
+        write(directory, levels, base);
+        System.out.println("Wrote " + count + " levels to " + directory + " after " + attempts + " attempts");
+    }
+
+    /**
+     * Writes levels as a configuration file and layout files that the game can load, with the layouts named
+     * level1.txt onwards.
+     * @param directory the directory to write config.json and the layouts to
+     * @param levels the levels, each with its layout lines
+     * @param base the configuration the colours and score values are copied from
+     */
+    public static void write(File directory, List<Level> levels, Config base) throws IOException {
+        Files.createDirectories(directory.toPath());
+        JSONArray entries = new JSONArray();
+        for (int i = 0; i < levels.size(); i++) {
+            Level level = levels.get(i);
+            String layout = "level" + (i+1) + ".txt";
+            Files.write(new File(directory, layout).toPath(), Arrays.asList(level.layoutLines));
+
+            JSONObject entry = new JSONObject();
+            entry.setString("layout", layout);
+            entry.setInt("time", level.time);
+            entry.setInt("spawn_interval", level.spawnInterval);
+            entry.setFloat("score_increase_from_hole_capture_modifier", level.scoreIncreaseModifier);
+            entry.setFloat("score_decrease_from_wrong_hole_modifier", level.scoreDecreaseModifier);
+            JSONArray balls = new JSONArray();
+            for (int colour : level.balls) {
+                balls.append(base.colours.names[colour]);
+            }
+            entry.setJSONArray("balls", balls);
+            entries.append(entry);
+        }
+
+        //Colours and their score values are copied from the base configuration
+        JSONObject config = new JSONObject();
+        config.setJSONArray("levels", entries);
+        base.colours.save(config);
+        config.save(new File(directory, "config.json"), "indent=2");
+    }
+}
+
+
+class Validation {
+
+    public final boolean passed;
+    public final float captureRate;
+    public final float wrongRate;
+
+    /**
+     * Constructor that sets the results of validating a generated level.
+     * @param passed whether the level passed
+     * @param captureRate the fraction of balls captured by the right hole without any lines drawn
+     * @param wrongRate the fraction of captures that were by the wrong hole
+     */
+    public Validation(boolean passed, float captureRate, float wrongRate) {
+        this.passed = passed;
+        this.captureRate = captureRate;
+        this.wrongRate = wrongRate;
+    }
+}
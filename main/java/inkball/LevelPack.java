@@ -0,0 +1,240 @@
+package inkball;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+public class LevelPack {
+
+    public static final String EXTENSION = ".pack";
+    private static final int MAGIC = 0x494e4b4c; //"INKL"
+    private static final int VERSION = 2; //Version 2 stores the colour table, version 1 only the scores of five colours
+    private static final int V1_COLOURS = 5;
+
+    private MappedByteBuffer buffer;
+    private int count;
+    private Colours colours;
+    private int indexStart; //Where the offsets of the levels start, after the header
+
+    /**
+     * Constructor that maps a level pack file into memory. Only the header is read here. Each level is found
+     * through the index at the start of the file and read when it is first needed, so opening a pack takes the
+     * same time however many levels it has.
+     * @param file the level pack file
+     */
+    public LevelPack(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Could not open level pack " + file, e);
+        }
+
+        if (buffer.limit() < 12 || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(file + " is not a level pack");
+        }
+        int version = buffer.getInt(4);
+        if (version != 1 && version != VERSION) {
+            throw new IllegalArgumentException("Unsupported level pack version " + version);
+        }
+        count = buffer.getInt(8);
+        ByteBuffer in = buffer.duplicate();
+        in.position(12);
+        colours = version == 1 ? readScores(in) : readColours(in);
+        indexStart = in.position();
+    }
+
+    /**
+     * Reads the scores of the five original colours, which is all a version 1 pack stores about colours.
+     * @param in the buffer to read from, at the start of the scores
+     * @return the colours
+     */
+    private static Colours readScores(ByteBuffer in) {
+        Colours defaults = Colours.defaults();
+        float[] scoreIncrease = new float[V1_COLOURS];
+        float[] scoreDecrease = new float[V1_COLOURS];
+        for (int i = 0; i < V1_COLOURS; i++) {
+            scoreIncrease[i] = in.getFloat();
+        }
+        for (int i = 0; i < V1_COLOURS; i++) {
+            scoreDecrease[i] = in.getFloat();
+        }
+        return new Colours(defaults.names, defaults.sprites, scoreIncrease, scoreDecrease);
+    }
+
+    /**
+     * Reads the name, sprite and scores of each colour.
+     * @param in the buffer to read from, at the start of the colour table
+     * @return the colours
+     */
+    private static Colours readColours(ByteBuffer in) {
+        int size = in.get() & 0xff;
+        String[] names = new String[size];
+        String[] sprites = new String[size];
+        float[] scoreIncrease = new float[size];
+        float[] scoreDecrease = new float[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = readString(in);
+            sprites[i] = readString(in);
+            scoreIncrease[i] = in.getFloat();
+            scoreDecrease[i] = in.getFloat();
+        }
+        return new Colours(names, sprites, scoreIncrease, scoreDecrease);
+    }
+
+    /**
+     * Gets the number of levels in the pack.
+     * @return the number of levels
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Gets the name, sprite and scores of each colour used by the levels in the pack.
+     * @return the colours
+     */
+    public Colours getColours() {
+        return this.colours;
+    }
+
+    /**
+     * Reads one level and its layout from the pack. This can be called from any thread.
+     * @param index the index of the level
+     * @return the level
+     */
+    public Level readLevel(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Level " + index + " is not in the pack");
+        }
+
+        //Each thread reads through its own view of the mapped file
+        ByteBuffer in = buffer.duplicate();
+        in.position((int) buffer.getLong(indexStart + 8*index));
+
+        int time = in.getInt();
+        int spawnInterval = in.getInt();
+        float scoreIncreaseModifier = in.getFloat();
+        float scoreDecreaseModifier = in.getFloat();
+        boolean endless = in.get() != 0;
+        String layout = readString(in);
+
+        int[] balls = new int[in.getShort()];
+        for (int i = 0; i < balls.length; i++) {
+            balls[i] = in.get();
+        }
+
+        String[] lines = new String[in.getShort()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = readString(in);
+        }
+
+        Level level = new Level(layout, time, spawnInterval, scoreIncreaseModifier, scoreDecreaseModifier, balls);
+        level.endless = endless;
+        level.layoutLines = lines;
+        return level;
+    }
+
+    /**
+     * Reads a string stored as its length followed by its UTF-8 bytes.
+     * @param in the buffer to read from
+     * @return the string
+     */
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xffff];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes every level of a configuration and its layout into a single level pack file.
+     * @param config the configuration to convert
+     * @param file the level pack file to write
+     */
+    public static void write(Config config, File file) throws IOException {
+        int levelCount = config.getLevelCount();
+
+        //Encode each level first so the index can hold their offsets
+        byte[][] records = new byte[levelCount][];
+        for (int i = 0; i < levelCount; i++) {
+            Level level = config.getLevel(i);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(level.time);
+            out.writeInt(level.spawnInterval);
+            out.writeFloat(level.scoreIncreaseModifier);
+            out.writeFloat(level.scoreDecreaseModifier);
+            out.writeByte(level.endless ? 1 : 0);
+            writeString(out, level.layout);
+
+            out.writeShort(level.balls.length);
+            for (int colour : level.balls) {
+                out.writeByte(colour);
+            }
+
+            String[] lines = config.loadLayout(level);
+            out.writeShort(lines.length);
+            for (String line : lines) {
+                writeString(out, line);
+            }
+            records[i] = bytes.toByteArray();
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(levelCount);
+
+            //Colour table, whose size sets where the index starts
+            Colours colours = config.colours;
+            ByteArrayOutputStream table = new ByteArrayOutputStream();
+            DataOutputStream tableOut = new DataOutputStream(table);
+            tableOut.writeByte(colours.size());
+            for (int colour = 0; colour < colours.size(); colour++) {
+                writeString(tableOut, colours.names[colour]);
+                writeString(tableOut, colours.sprites[colour]);
+                tableOut.writeFloat(colours.scoreIncrease[colour]);
+                tableOut.writeFloat(colours.scoreDecrease[colour]);
+            }
+            table.writeTo(out);
+
+            //Index of where each level starts
+            long offset = 12 + table.size() + 8L*levelCount;
+            for (byte[] record : records) {
+                out.writeLong(offset);
+                offset += record.length;
+            }
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        }
+    }
+
+    /**
+     * Writes a string as its length followed by its UTF-8 bytes.
+     * @param out the stream to write to
+     * @param s the string
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Converts a configuration file and its layout files into a level pack.
+     * Arguments are the configuration file and the level pack file to write.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        String configPath = args.length > 0 ? args[0] : "config.json";
+        String packPath = args.length > 1 ? args[1] : "levels" + EXTENSION;
+
+        Config config = Config.load(configPath);
+        write(config, new File(packPath));
+        System.out.println("Wrote " + config.getLevelCount() + " levels to " + packPath);
+    }
+}
@@ -7,6 +7,8 @@ public class Line {
     
     public ArrayList<PVector> points;
     private boolean isComplete;
+    Pools pools; //Where points are taken from, or null to create them
+    int generation = 0; //Times the line has been reused from a pool
 
     /**
      * Constructor that creates a new list to store all the points on a line and
@@ -25,10 +27,20 @@ public class Line {
      */
     public void addPoint(float x, float y) {
         if (!isComplete) {
-            points.add(new PVector(x, y));
+            points.add(pools != null ? pools.point(x, y) : new PVector(x, y));
         }
     }
 
+    /**
+     * Empties the line so it can be drawn again, keeping the capacity of its list of points. The points
+     * themselves must already have been taken by a pool or be no longer needed.
+     */
+    void reset() {
+        points.clear();
+        isComplete = false;
+        generation++;
+    }
+
     /**
      * Sets the line as completed.
      */
@@ -36,6 +48,19 @@ public class Line {
         isComplete = true;
     }
 
+    /**
+     * Creates a copy of the line with its own list of points.
+     * @return the copy
+     */
+    public Line copy() {
+        Line line = new Line();
+        for (PVector point : this.points) {
+            line.points.add(point.copy());
+        }
+        line.isComplete = this.isComplete;
+        return line;
+    }
+
     /**
      * Draws the player-drawn line based on the points of the line.
      * @param app an object of the App class
@@ -45,10 +70,12 @@ public class Line {
         app.stroke(0);
         app.strokeWeight(10);
         
-        //Draw a line between each consecutive pair of points in the list of points
-        for (int i = 0; i < points.size()-1; i++) {
+        //Draw a line between each consecutive pair of points in the list of points, skipping points between
+        //them when drawing at lower quality
+        int step = app.quality.getLineStep();
+        for (int i = 0; i < points.size()-1; i += step) {
             PVector point1 = points.get(i);
-            PVector point2 = points.get(i+1);
+            PVector point2 = points.get(Math.min(i+step, points.size()-1));
             
             //Only draw the line if it is inside the bounds of the game board
             if (point1.y>App.TOPBAR+3 && point2.y>App.TOPBAR+3) {
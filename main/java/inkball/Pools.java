@@ -0,0 +1,104 @@
+package inkball;
+
+import processing.core.PVector;
+
+import java.util.ArrayList;
+
+public class Pools {
+
+    private static final int MAX_BALLS = 256; //Most free balls kept, enough for the busiest levels
+    private static final int MAX_LINES = 64; //Most free lines kept
+    private static final int MAX_POINTS = 1 << 15; //Most free points kept, about a megabyte
+
+    private ArrayList<Ball> balls = new ArrayList<>();
+    private ArrayList<Line> lines = new ArrayList<>();
+    private ArrayList<PVector> points = new ArrayList<>();
+    private int created = 0;
+
+    /**
+     * Gets a ball set up as if it was just created, reusing a captured or cleared ball if there is one. A reused
+     * ball is the same object as before, so anything holding on to it must check its generation to tell the two
+     * apart.
+     * @param x the x position of the ball in cells
+     * @param y the y position of the ball in cells
+     * @param colour the colour of the ball
+     * @return the ball
+     */
+    public Ball ball(float x, float y, int colour) {
+        if (balls.isEmpty()) {
+            created++;
+            return new Ball(x, y, colour);
+        }
+        Ball ball = balls.remove(balls.size()-1);
+        ball.reset(x, y, colour);
+        return ball;
+    }
+
+    /**
+     * Returns a ball that has left the board so it can be reused. Balls beyond the limit are left to the garbage
+     * collector.
+     * @param ball the ball, which must no longer be used
+     */
+    public void free(Ball ball) {
+        if (balls.size() < MAX_BALLS) {
+            balls.add(ball);
+        }
+    }
+
+    /**
+     * Gets an empty line that takes its points from this pool, reusing an erased or collided line if there is one.
+     * @return the line
+     */
+    public Line line() {
+        Line line;
+        if (lines.isEmpty()) {
+            created++;
+            line = new Line();
+            line.pools = this;
+        }
+        else {
+            line = lines.remove(lines.size()-1);
+        }
+        return line;
+    }
+
+    /**
+     * Returns a line that has left the board so it and its points can be reused. The list of points keeps its
+     * capacity, so a reused line grows without copying until it is longer than before.
+     * @param line the line, which must no longer be used
+     */
+    public void free(Line line) {
+        for (PVector point : line.points) {
+            if (points.size() < MAX_POINTS) {
+                points.add(point);
+            }
+        }
+        line.reset();
+        if (line.pools == this && lines.size() < MAX_LINES) {
+            lines.add(line);
+        }
+    }
+
+    /**
+     * Gets a point for a line, reusing a point of a freed line if there is one.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the point
+     */
+    PVector point(float x, float y) {
+        if (points.isEmpty()) {
+            created++;
+            return new PVector(x, y);
+        }
+        return points.remove(points.size()-1).set(x, y);
+    }
+
+    /**
+     * Gets the number of balls, lines and points created because a pool was empty. Once play has settled this
+     * stops growing.
+     * @return the number created
+     */
+    public int getCreated() {
+        return this.created;
+    }
+}
@@ -0,0 +1,175 @@
+package inkball;
+
+import processing.core.PGraphics;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.util.Arrays;
+
+public class QualityGovernor {
+
+    public static final int LOW = 0;
+    public static final int MEDIUM = 1;
+    public static final int HIGH = 2;
+    static final String[] NAMES = {"low", "medium", "high"};
+
+    private static final int WINDOW = App.FPS; //Frames judged together (one second)
+    private static final double SLOW = 0.85; //Share of the frame budget over which quality steps down
+    private static final double FAST = 0.5; //Share of the frame budget under which quality may step back up
+    private static final int MIN_CALM = 5; //Fast windows in a row needed before stepping up
+    private static final int MAX_CALM = 60; //Most fast windows ever needed, after repeated failed steps up
+
+    private long budget = 1_000_000_000L / App.FPS;
+    private boolean fixed;
+    private int level = HIGH;
+    private long[] frames = new long[WINDOW];
+    private long[] sorted = new long[WINDOW];
+    private int count = 0;
+    private int calm = 0; //Fast windows in a row
+    private int calmNeeded = MIN_CALM;
+    private int windowsAtLevel = 0; //Windows judged since the level last changed
+    private boolean steppedUp = false; //Whether the level last changed by stepping up
+
+    //Rendering hints of the window at full quality, read the first time they are changed
+    private Object antialias;
+    private Object interpolation;
+
+    /**
+     * Constructor that creates a governor which starts at full quality and steps it down when frames take too
+     * long to draw, and back up once they are fast again. Only how the game looks changes: every lever is in the
+     * drawing code, so balls, lines and the score play out the same at every level.
+     */
+    public QualityGovernor() {
+    }
+
+    /**
+     * Constructor that creates a governor which keeps one level of quality whatever the frame times are, for
+     * cabinets whose hardware is known or for rendering that must look the same every time.
+     * @param level the level to keep, LOW, MEDIUM or HIGH
+     */
+    public QualityGovernor(int level) {
+        this.level = level;
+        this.fixed = true;
+    }
+
+    /**
+     * Creates a governor from the name of a level, or one that adapts if no name is given.
+     * @param name "low", "medium" or "high", or null to adapt to the frame times
+     * @return the governor
+     */
+    public static QualityGovernor forName(String name) {
+        if (name == null) {
+            return new QualityGovernor();
+        }
+        int level = Arrays.asList(NAMES).indexOf(name.toLowerCase());
+        if (level == -1) {
+            throw new IllegalArgumentException("Unknown quality " + name + ", expected low, medium or high");
+        }
+        return new QualityGovernor(level);
+    }
+
+    /**
+     * Records how long a frame took to draw. Once a second the slowest frames of the last second are compared
+     * with the frame budget: quality steps down as soon as they come close to it, and only steps back up after
+     * several seconds well within it. If a step up is followed straight away by a step down, the next step up
+     * waits twice as long, so quality settles instead of flickering between two levels.
+     * @param nanos the time the frame took in nanoseconds
+     */
+    public void record(long nanos) {
+        if (fixed) {
+            return;
+        }
+        frames[count++] = nanos;
+        if (count < WINDOW) {
+            return;
+        }
+        count = 0;
+        windowsAtLevel++;
+
+        //Judge the window by its 90th percentile, so a single slow frame does not change the quality
+        System.arraycopy(frames, 0, sorted, 0, WINDOW);
+        Arrays.sort(sorted);
+        long slow = sorted[WINDOW * 9 / 10];
+
+        if (slow > budget * SLOW && level > LOW) {
+            if (steppedUp && windowsAtLevel <= 1) {
+                calmNeeded = Math.min(MAX_CALM, calmNeeded * 2);
+            }
+            setLevel(level - 1, false);
+        }
+        else if (slow < budget * FAST && level < HIGH) {
+            if (++calm >= calmNeeded) {
+                setLevel(level + 1, true);
+            }
+        }
+        else {
+            calm = 0;
+        }
+    }
+
+    /**
+     * Changes the level of quality and starts judging frames afresh.
+     * @param level the new level
+     * @param up whether the level is higher than before
+     */
+    private void setLevel(int level, boolean up) {
+        this.level = level;
+        this.steppedUp = up;
+        this.calm = 0;
+        this.windowsAtLevel = 0;
+    }
+
+    /**
+     * Sets the rendering hints of a graphics buffer for the current level. Below full quality, scaled sprites such
+     * as balls shrinking into a hole are drawn with the nearest pixel instead of smoothed, and at the lowest level
+     * shapes such as ink are also drawn without antialiasing.
+     * @param graphics the buffer about to be drawn to
+     */
+    public void apply(PGraphics graphics) {
+        if (!(graphics.getNative() instanceof Graphics2D)) {
+            return;
+        }
+        Graphics2D g2 = (Graphics2D) graphics.getNative();
+        if (antialias == null) {
+            if (level == HIGH) {
+                return; //Nothing has been changed yet
+            }
+            antialias = g2.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+            if (antialias == null) {
+                antialias = RenderingHints.VALUE_ANTIALIAS_DEFAULT;
+            }
+            interpolation = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        }
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, level > LOW ? antialias : RenderingHints.VALUE_ANTIALIAS_OFF);
+        if (interpolation != null) {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                level == HIGH ? interpolation : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        }
+    }
+
+    /**
+     * Gets how many points of a line each segment drawn spans. Gaps in a line are filled with a point every
+     * pixel, so longer segments look almost the same while drawing far fewer thick strokes.
+     * @return 1 at full quality, 2 at medium and 4 at low
+     */
+    public int getLineStep() {
+        return 1 << (HIGH - level);
+    }
+
+    /**
+     * Checks if the ball queue slides along when a ball spawns. At the lowest level the balls move straight to
+     * their new places.
+     * @return true if the queue slides, false otherwise
+     */
+    public boolean slidesQueue() {
+        return level > LOW;
+    }
+
+    public int getLevel() {
+        return this.level;
+    }
+
+    public boolean isFixed() {
+        return this.fixed;
+    }
+}
@@ -0,0 +1,276 @@
+package inkball;
+
+import java.io.*;
+import java.util.Arrays;
+
+public class Replay {
+
+    private static final int MAGIC = 0x494e4b52; //"INKR"
+    private static final int MAGIC_FIXED = 0x494e4b46; //"INKF", a replay of a game with fixed point physics
+
+    public final long seed;
+    public final int level;
+    public boolean fixedPoint = false; //Whether the game used fixed point physics, which it must be replayed with
+    private int ticks = 0;
+    private int count = 0;
+    private int[] eventTicks = new int[64];
+    private int[] types = new int[64];
+    private float[] xs = new float[64];
+    private float[] ys = new float[64];
+    private long[] seeds = new long[64]; //Seed each restart event starts the level with
+    private int levelStart = 0; //Tick the current level started on
+    private int levelEvents = 0; //Number of events recorded before the current level started
+
+    /**
+     * Constructor that creates an empty replay. A game is fully decided by its seed, the level it started on and
+     * the input applied on each tick, so that is all a replay holds. Each restart of a level draws a new seed, so
+     * only the seed of a restart is kept and the input of the attempt it ends is dropped.
+     * @param seed the seed of the game
+     * @param level the level the game started on
+     */
+    public Replay(long seed, int level) {
+        this.seed = seed;
+        this.level = level;
+    }
+
+    /**
+     * Records an input event applied to the game before the current tick.
+     * @param type the type of event, one of the constants in InputQueue
+     * @param x the x coordinate of the mouse
+     * @param y the y coordinate of the mouse
+     */
+    public void record(int type, float x, float y) {
+        add(type, x, y, 0);
+    }
+
+    /**
+     * Adds an event to the end of the replay.
+     * @param type the type of event
+     * @param x the x coordinate of the mouse
+     * @param y the y coordinate of the mouse
+     * @param seed the seed of a restart event, or 0 for any other event
+     */
+    private void add(int type, float x, float y, long seed) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            eventTicks = Arrays.copyOf(eventTicks, capacity);
+            types = Arrays.copyOf(types, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            seeds = Arrays.copyOf(seeds, capacity);
+        }
+        eventTicks[count] = ticks;
+        types[count] = type;
+        xs[count] = x;
+        ys[count] = y;
+        seeds[count] = seed;
+        count++;
+    }
+
+    /**
+     * Records that the game has moved on to the next level, after the tick the last one was won on.
+     */
+    public void startLevel() {
+        levelStart = ticks;
+        levelEvents = count;
+    }
+
+    /**
+     * Records a restart of the current level. Nothing of the attempt being restarted carries over, so its input
+     * and ticks are dropped and the restart is recorded as if it happened when the level started. Restarting
+     * over and over keeps only the last restart, so a game that is never won does not grow its replay.
+     * @param seed the seed the game restarts the level with
+     */
+    public void restart(long seed) {
+        count = levelEvents;
+        ticks = levelStart;
+        add(InputQueue.RESTART, 0, 0, seed);
+    }
+
+    /**
+     * Records that the game has advanced by one tick.
+     */
+    public void tick() {
+        ticks++;
+    }
+
+    /**
+     * Creates the game the replay was recorded on, as it was before the first tick.
+     * @param config the configuration the game was played with
+     * @return the game
+     */
+    public Game start(Config config) {
+        Game game = new Game(config, seed);
+        game.flightEvents = false; //The game was already recorded by the flight recorder when it was played
+        game.currentLevel = level;
+        game.fixedPoint = fixedPoint;
+        game.resetGame();
+        return game;
+    }
+
+    /**
+     * Applies the input events recorded before a tick to a game, in the order they were recorded.
+     * @param game the game being replayed
+     * @param tick the tick about to be played
+     * @param next the index of the first event not yet applied
+     * @return the index of the first event after this tick's
+     */
+    public int apply(Game game, int tick, int next) {
+        while (next < count && eventTicks[next] == tick) {
+            if (types[next] == InputQueue.RESTART) {
+                game.restart(seeds[next]);
+            }
+            else {
+                game.apply(types[next], xs[next], ys[next]);
+            }
+            next++;
+        }
+        return next;
+    }
+
+    /**
+     * Plays the replay on a new game. Between input events nothing but the simulation happens, so those stretches
+     * are run with the event-driven simulation.
+     * @param config the configuration the game was played with
+     * @return the game at the end of the replay
+     */
+    public Game play(Config config) {
+        Game game = start(config);
+        play(game, new EventSimulator(game), 0, ticks, 0);
+        return game;
+    }
+
+    /**
+     * Plays a game on from one tick of the replay to a later one. Between input events nothing but the simulation
+     * happens, so those stretches are run with the event-driven simulation.
+     * @param game the game, as it was before the first tick to play
+     * @param simulator the simulation of the game
+     * @param from the first tick to play
+     * @param to the tick to stop before
+     * @param next the index of the first event not yet applied
+     * @return the index of the first event not yet applied after playing
+     */
+    public int play(Game game, EventSimulator simulator, int from, int to, int next) {
+        int played = from;
+        while (played < to) {
+            next = apply(game, played, next);
+
+            //Run until the next input, or one tick at a time once the level has ended since the simulation stops there
+            int until = Math.min(next < count ? eventTicks[next] : ticks, to);
+            int ran = game.levelEnded ? 0 : simulator.run(until - played);
+            if (ran == 0) {
+                game.tick();
+                ran = 1;
+            }
+            played += ran;
+        }
+        return next;
+    }
+
+    /**
+     * Checks a score by playing the replay again.
+     * @param config the configuration the game was played with
+     * @param score the score claimed for the game
+     * @return true if the replay gives exactly the claimed score
+     */
+    public boolean validate(Config config, float score) {
+        return validate(config, score, 0, ticks);
+    }
+
+    /**
+     * Checks a score gained over part of the replay, such as one level of a game, by playing the replay again up to
+     * the end of that part.
+     * @param config the configuration the game was played with
+     * @param score the score claimed for the part
+     * @param from the tick the part started on
+     * @param to the tick the part ended after
+     * @return true if the score of the replay went up by exactly the claimed score over the part
+     */
+    public boolean validate(Config config, float score, int from, int to) {
+        if (from < 0 || from > to || to > ticks) {
+            return false;
+        }
+        Game game = start(config);
+        EventSimulator simulator = new EventSimulator(game);
+        int next = play(game, simulator, 0, from, 0);
+        float before = game.getScore();
+        play(game, simulator, from, to, next);
+        return game.getScore() - before == score;
+    }
+
+    /**
+     * Writes the replay to a stream.
+     * @param out the stream to write to
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(fixedPoint ? MAGIC_FIXED : MAGIC);
+        out.writeLong(seed);
+        out.writeInt(level);
+        out.writeInt(ticks);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(eventTicks[i]);
+            out.writeByte(types[i]);
+            out.writeFloat(xs[i]);
+            out.writeFloat(ys[i]);
+            if (types[i] == InputQueue.RESTART) {
+                out.writeLong(seeds[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a replay from a stream.
+     * @param in the stream to read from
+     * @return the replay
+     */
+    public static Replay read(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC && magic != MAGIC_FIXED) {
+            throw new IOException("Not a replay");
+        }
+        Replay replay = new Replay(in.readLong(), in.readInt());
+        replay.fixedPoint = magic == MAGIC_FIXED;
+        int ticks = in.readInt();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            replay.ticks = in.readInt();
+            int type = in.readByte();
+            float x = in.readFloat();
+            float y = in.readFloat();
+            replay.add(type, x, y, type == InputQueue.RESTART ? in.readLong() : 0);
+        }
+        replay.ticks = ticks;
+        return replay;
+    }
+
+    public int getTicks() {
+        return this.ticks;
+    }
+
+    public int getLevelStart() {
+        return this.levelStart;
+    }
+
+    public int getEvents() {
+        return this.count;
+    }
+
+    /**
+     * Checks the score of a saved replay. Arguments are the configuration file, the replay file, the claimed
+     * score and, for the score of one level, the ticks the level started and ended on.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        Config config = Config.load(args[0]);
+        Replay replay;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[1])))) {
+            replay = read(in);
+        }
+        float claimed = Float.parseFloat(args[2]);
+        int from = args.length > 4 ? Integer.parseInt(args[3]) : 0;
+        int to = args.length > 4 ? Integer.parseInt(args[4]) : replay.getTicks();
+        boolean valid = replay.validate(config, claimed, from, to);
+        System.out.println("Claimed " + claimed + " over ticks " + from + " to " + to + ": " + (valid ? "valid" : "INVALID"));
+    }
+}
@@ -0,0 +1,183 @@
+package inkball;
+
+import processing.awt.PGraphicsJava2D;
+import processing.core.PGraphics;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+
+public class ReplayRenderer {
+
+    static final int CHUNK = 10 * App.FPS; //Fewest frames rendered by each task
+    static final int TASKS_PER_THREAD = 4; //Most tasks for each thread, so threads finishing early can take more
+
+    private Config config;
+    private Replay replay;
+    private File directory;
+
+    /**
+     * Constructor that sets up rendering a replay to a sequence of PNG images, one for every tick, named
+     * frame000000.png onwards.
+     * @param config the configuration the game was played with
+     * @param replay the replay to render
+     * @param directory the directory to write the images to
+     */
+    public ReplayRenderer(Config config, Replay replay, File directory) {
+        this.config = config;
+        this.replay = replay;
+        this.directory = directory;
+    }
+
+    /**
+     * Renders every frame of the replay. The frames are split into ranges rendered in parallel, each by a task
+     * that plays the replay from the start to reach its range, since a replay plays out the same way every time
+     * and the simulation is far faster than drawing. There are only a few ranges for each thread however long the
+     * replay, so the ticks played to reach them grow with its length rather than its square. Each task draws and
+     * encodes one frame at a time on its own offscreen window, so the memory held by frames in flight is one
+     * window per thread however long the replay.
+     * @param pool the threads to render on
+     * @param threads the number of threads of the pool
+     * @return the number of frames written
+     */
+    public int render(ExecutorService pool, int threads) throws IOException, InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        int ticks = replay.getTicks();
+        int chunk = Math.max(CHUNK, (ticks + threads * TASKS_PER_THREAD - 1) / (threads * TASKS_PER_THREAD));
+        ArrayList<Callable<Integer>> tasks = new ArrayList<>();
+        for (int from = 0; from < ticks; from += chunk) {
+            int start = from;
+            int end = Math.min(from + chunk, ticks);
+            tasks.add(() -> render(start, end));
+        }
+
+        int frames = 0;
+        for (Future<Integer> result : pool.invokeAll(tasks)) {
+            try {
+                frames += result.get();
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Renders a range of frames. The game is caught up to the start of the range with the event-driven simulation,
+     * as when a replay is played, then each frame is drawn the way the window draws it: the board before the tick,
+     * then the top bar after it.
+     * @param from the first tick to render
+     * @param to the tick after the last one to render
+     * @return the number of frames written
+     */
+    private int render(int from, int to) throws IOException {
+        RenderTarget target = new RenderTarget();
+        Game game = replay.start(config);
+        target.game = game;
+        target.hud = new Hud(target);
+
+        int next = replay.play(game, new EventSimulator(game), 0, from, 0);
+        for (int tick = from; tick < to; tick++) {
+            next = replay.apply(game, tick, next);
+            target.g.beginDraw();
+            target.drawBoard();
+            game.tick();
+            target.drawTopBar();
+            target.g.endDraw();
+            ImageIO.write((BufferedImage) target.g.getImage(), "png", new File(directory, String.format("frame%06d.png", tick)));
+        }
+        return to - from;
+    }
+
+    /**
+     * Renders a replay file to images. Arguments are the configuration file, the replay file, the directory to
+     * write to and optionally the number of threads.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        Config config = Config.load(args[0]);
+        Replay replay;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[1])))) {
+            replay = Replay.read(in);
+        }
+        File directory = new File(args.length > 2 ? args[2] : "frames");
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        int frames;
+        try {
+            frames = new ReplayRenderer(config, replay, directory).render(pool, threads);
+        }
+        finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("Rendered %d frames to %s in %.1fs (%.0f frames/s, %.1fx real time) on %d threads",
+            frames, directory, seconds, frames / seconds, frames / seconds / App.FPS, threads));
+    }
+}
+
+
+class RenderTarget extends App {
+
+    /**
+     * Constructor that creates a window that is never shown, drawing into an image in memory instead so it
+     * works without a display. Every graphics buffer it creates, such as the top bar's, is also kept in memory.
+     */
+    public RenderTarget() {
+        this.width = WIDTH;
+        this.height = HEIGHT;
+        this.pixelWidth = WIDTH;
+        this.pixelHeight = HEIGHT;
+        this.g = makeGraphics(WIDTH, HEIGHT, JAVA2D, null, false);
+        sketchPath(); //Sprites are loaded relative to it, and it is otherwise only set when a window opens
+    }
+
+    /**
+     * Creates a graphics buffer backed by an image in memory.
+     * @param w the width in pixels
+     * @param h the height in pixels
+     * @param renderer ignored, since only Java2D is used
+     * @param path ignored, since nothing is recorded to a file
+     * @param primary ignored, since no buffer is shown
+     * @return the buffer
+     */
+    @Override
+    protected PGraphics makeGraphics(int w, int h, String renderer, String path, boolean primary) {
+        OffscreenGraphics graphics = new OffscreenGraphics();
+        graphics.setParent(this);
+        graphics.setPrimary(false);
+        graphics.setSize(w, h);
+        return graphics;
+    }
+}
+
+
+class OffscreenGraphics extends PGraphicsJava2D {
+
+    /**
+     * Creates the image to draw into. Java2D normally makes an image suited to the screen, which fails without
+     * one, so a plain image with transparency is used instead.
+     * @return the graphics context of the image
+     */
+    @Override
+    public Graphics2D checkImage() {
+        if (image == null || ((BufferedImage) image).getWidth() != pixelWidth || ((BufferedImage) image).getHeight() != pixelHeight) {
+            image = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_ARGB);
+        }
+        return (Graphics2D) image.getGraphics();
+    }
+}
@@ -0,0 +1,205 @@
+package inkball;
+
+import java.util.*;
+
+public class Scheduler {
+
+    private static final int SLOTS = 64;
+
+    private ArrayList<ArrayList<ScheduledTask>> wheel = new ArrayList<>();
+    private ArrayList<ScheduledTask> due = new ArrayList<>();
+    private long now = 0;
+    private int pending = 0;
+
+    /**
+     * Constructor that creates a hashed timing wheel. Each task is stored in the slot given by its deadline
+     * modulo the number of slots, so each tick only looks at the tasks that could be due in that tick.
+     */
+    public Scheduler() {
+        for (int i = 0; i < SLOTS; i++) {
+            wheel.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Schedules a task to run once after a number of ticks.
+     * @param delay the number of ticks to wait, at least 1
+     * @param task the task to run
+     * @return the scheduled task, which can be cancelled
+     */
+    public ScheduledTask schedule(int delay, Runnable task) {
+        return scheduleRepeating(delay, 0, task);
+    }
+
+    /**
+     * Schedules a task to run after a number of ticks and then again every period.
+     * @param delay the number of ticks to wait before the first run, at least 1
+     * @param period the number of ticks between runs, or 0 to run only once
+     * @param task the task to run
+     * @return the scheduled task, which can be cancelled
+     */
+    public ScheduledTask scheduleRepeating(int delay, int period, Runnable task) {
+        ScheduledTask scheduled = new ScheduledTask(this, now + Math.max(delay, 1), period, task);
+        insert(scheduled);
+        return scheduled;
+    }
+
+    /**
+     * Places a task in the slot of the wheel for its deadline.
+     * @param task the task to place
+     */
+    private void insert(ScheduledTask task) {
+        wheel.get((int) (task.deadline & (SLOTS - 1))).add(task);
+        pending++;
+    }
+
+    /**
+     * Stops a task from running. Cancelled tasks are removed from the wheel straight away.
+     * @param task the task to cancel
+     */
+    public void cancel(ScheduledTask task) {
+        if (task != null && !task.isDone()) {
+            task.cancelled = true;
+            if (wheel.get((int) (task.deadline & (SLOTS - 1))).remove(task)) {
+                pending--;
+            }
+        }
+    }
+
+    /**
+     * Advances the wheel by one tick and runs every task that is due in it. Repeating tasks are placed back
+     * into the wheel before running so they can cancel themselves.
+     */
+    public void tick() {
+        now++;
+        ArrayList<ScheduledTask> slot = wheel.get((int) (now & (SLOTS - 1)));
+
+        //Take out the tasks due now, leaving the ones due in later rotations
+        for (int i = slot.size()-1; i >= 0; i--) {
+            ScheduledTask task = slot.get(i);
+            if (task.deadline == now) {
+                slot.remove(i);
+                pending--;
+                due.add(task);
+            }
+        }
+
+        //Run in the order the tasks were scheduled
+        for (int i = due.size()-1; i >= 0; i--) {
+            ScheduledTask task = due.get(i);
+            if (task.cancelled) {
+                continue; //Cancelled by a task that ran earlier in this tick
+            }
+            if (task.period > 0) {
+                task.deadline += task.period;
+                insert(task);
+            }
+            else {
+                task.fired = true;
+            }
+            task.task.run();
+        }
+        due.clear();
+    }
+
+    /**
+     * Advances the wheel by a number of ticks, running tasks as they become due. Ticks with nothing due are
+     * jumped over, so this costs one tick for each time tasks run rather than one for every tick advanced.
+     * @param ticks the number of ticks to advance
+     */
+    public void advance(int ticks) {
+        long end = now + ticks;
+        while (now < end) {
+            long next = now + ticksUntilNext();
+            if (next > end) {
+                now = end;
+                break;
+            }
+            now = next - 1;
+            tick();
+        }
+    }
+
+    /**
+     * Gets the number of ticks until the next task is due.
+     * @return the number of ticks, or Integer.MAX_VALUE if nothing is scheduled
+     */
+    public int ticksUntilNext() {
+        long next = Long.MAX_VALUE;
+        for (ArrayList<ScheduledTask> slot : wheel) {
+            for (ScheduledTask task : slot) {
+                next = Math.min(next, task.deadline);
+            }
+        }
+        if (next == Long.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) (next - now);
+    }
+
+    /**
+     * Removes all tasks from the wheel and resets the tick count.
+     */
+    public void clear() {
+        for (ArrayList<ScheduledTask> slot : wheel) {
+            for (ScheduledTask task : slot) {
+                task.cancelled = true;
+            }
+            slot.clear();
+        }
+        pending = 0;
+        now = 0;
+    }
+
+    public long getTick() {
+        return this.now;
+    }
+
+    public int getPending() {
+        return this.pending;
+    }
+}
+
+
+class ScheduledTask {
+
+    private Scheduler scheduler;
+    long deadline;
+    int period;
+    Runnable task;
+    boolean cancelled = false;
+    boolean fired = false;
+
+    /**
+     * Constructor that sets when a task is due and how often it repeats.
+     * @param scheduler the scheduler the task belongs to
+     * @param deadline the tick the task is first due in
+     * @param period the number of ticks between runs, or 0 to run only once
+     * @param task the task to run
+     */
+    public ScheduledTask(Scheduler scheduler, long deadline, int period, Runnable task) {
+        this.scheduler = scheduler;
+        this.deadline = deadline;
+        this.period = period;
+        this.task = task;
+    }
+
+    /**
+     * Gets the number of ticks left before the task is next due.
+     * @return the number of ticks, or 0 if the task has finished or been cancelled
+     */
+    public int remaining() {
+        if (isDone()) {
+            return 0;
+        }
+        return (int) (deadline - scheduler.getTick());
+    }
+
+    /**
+     * Checks if the task will not run again, either because it has run once or has been cancelled.
+     * @return true if done, false otherwise
+     */
+    public boolean isDone() {
+        return cancelled || fired;
+    }
+}
@@ -0,0 +1,295 @@
+package inkball;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ScoreStore {
+
+    public static final int TOTAL = -1; //Level number used for the total score of a whole game
+    private static final int MAGIC = 0x494e4b53; //"INKS"
+    private static final int VERSION = 2;
+    private static final int RECORD_SIZE = 40;
+    private static final int CHUNK_SIZE = RECORD_SIZE * 1024; //Bytes mapped at a time, a whole number of records
+    private static final int COMMITTED = 1;
+    public static final long NO_REPLAY = -1;
+
+    private FileChannel channel;
+    private File replayDirectory;
+    private MappedByteBuffer chunk;
+    private long chunkStart = -1;
+    private volatile long records = 0;
+    private int topCount;
+    private ConcurrentHashMap<Integer, List<ScoreEntry>> top = new ConcurrentHashMap<>();
+    private ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "score-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor that opens a score file and its replay directory, creating them if needed, and reads the existing
+     * scores into a top scores index for each level. The score file is an append-only list of fixed size records.
+     * The first record is a header and each record has a commit marker written last, so a record cut off by a crash
+     * is ignored. Each game's replay is saved once in the replay directory, named by its seed, and each score
+     * refers to the replay of its game and the ticks of the replay it was scored over.
+     * @param file the file to store scores in
+     * @param replayDirectory the directory to save the replays of the scores in
+     * @param topCount the number of top scores to keep for each level
+     */
+    public ScoreStore(File file, File replayDirectory, int topCount) {
+        this.topCount = topCount;
+        this.replayDirectory = replayDirectory;
+        try {
+            Files.createDirectories(replayDirectory.toPath());
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            mapChunk(0);
+
+            if (chunk.getInt(0) == 0) {
+                //New file, write the header
+                chunk.putInt(4, VERSION);
+                chunk.putInt(0, MAGIC);
+            }
+            else if (chunk.getInt(0) != MAGIC) {
+                throw new IllegalArgumentException(file + " is not a score file");
+            }
+            else if (chunk.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("Unsupported score file version " + chunk.getInt(4) + " in " + file);
+            }
+            records = 1;
+
+            //Read every committed record after the header
+            while (true) {
+                long position = records * RECORD_SIZE;
+                if (position >= channel.size()) {
+                    break;
+                }
+                mapChunk(position);
+                int offset = (int) (position - chunkStart);
+                if (chunk.getInt(offset + 36) != COMMITTED) {
+                    break;
+                }
+                index(new ScoreEntry(chunk.getInt(offset + 16), chunk.getFloat(offset + 20), chunk.getLong(offset + 8),
+                    chunk.getInt(offset + 28), chunk.getInt(offset + 32), chunk.getInt(offset + 24), chunk.getLong(offset)));
+                records++;
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Maps the chunk of the file containing a position, which grows the file if it is not long enough.
+     * @param position the byte position in the file
+     */
+    private void mapChunk(long position) throws IOException {
+        long start = position - position % CHUNK_SIZE;
+        if (start != chunkStart) {
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, start, CHUNK_SIZE);
+            chunkStart = start;
+        }
+    }
+
+    /**
+     * Records a score. The record is appended to the file on a background thread, so this never blocks the caller.
+     * Scores recorded after the store is closed are dropped.
+     * @param level the index of the level, or TOTAL for the score of a whole game
+     * @param score the score
+     * @param replayId the seed of the replay of the game the score was gained in, or NO_REPLAY if it was not recorded
+     * @param replayStart the tick of the replay the score started being gained on
+     * @param replayEnd the tick of the replay the score was reached after
+     * @param durationTicks the number of ticks the level or game took
+     */
+    public void record(int level, float score, long replayId, int replayStart, int replayEnd, int durationTicks) {
+        ScoreEntry entry = new ScoreEntry(level, score, replayId, replayStart, replayEnd, durationTicks,
+            System.currentTimeMillis());
+        try {
+            writer.execute(() -> append(entry));
+        }
+        catch (RejectedExecutionException e) {
+            System.err.println("Could not save score: the score file is closed");
+        }
+    }
+
+    /**
+     * Saves the replay of a game in the replay directory on a background thread, so this never blocks the caller.
+     * The game must not add to the replay after this, which is why it is saved once the game is over. The replay is
+     * written to a temporary file that is then renamed, so a replay cut off by a crash is never read.
+     * @param replay the replay of the game
+     */
+    public void saveReplay(Replay replay) {
+        try {
+            writer.execute(() -> {
+                File file = replayFile(replay.seed);
+                File partial = new File(replayDirectory, replay.seed + ".partial");
+                try {
+                    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partial)))) {
+                        replay.write(out);
+                    }
+                    Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (IOException e) {
+                    System.err.println("Could not save replay " + file + ": " + e.getMessage());
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            System.err.println("Could not save replay: the score file is closed");
+        }
+    }
+
+    /**
+     * Gets the file the replay with a seed is saved in.
+     * @param replayId the seed of the replay
+     * @return the file
+     */
+    private File replayFile(long replayId) {
+        return new File(replayDirectory, replayId + ".replay");
+    }
+
+    /**
+     * Reads the replay a score refers to.
+     * @param entry the score
+     * @return the replay, or null if the score has no replay or it was never saved, as for a game cut off by a crash
+     */
+    public Replay readReplay(ScoreEntry entry) throws IOException {
+        File file = replayFile(entry.replayId);
+        if (entry.replayId == NO_REPLAY || !file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return Replay.read(in);
+        }
+    }
+
+    /**
+     * Appends a record to the end of the file and adds it to the top scores. Only called on the writer thread.
+     * @param entry the score to append
+     */
+    private void append(ScoreEntry entry) {
+        try {
+            long position = records * RECORD_SIZE;
+            mapChunk(position);
+            int offset = (int) (position - chunkStart);
+            chunk.putLong(offset, entry.timestamp);
+            chunk.putLong(offset + 8, entry.replayId);
+            chunk.putInt(offset + 16, entry.level);
+            chunk.putFloat(offset + 20, entry.score);
+            chunk.putInt(offset + 24, entry.durationTicks);
+            chunk.putInt(offset + 28, entry.replayStart);
+            chunk.putInt(offset + 32, entry.replayEnd);
+            chunk.putInt(offset + 36, COMMITTED); //Marker last so partial records are never read
+            records++;
+            index(entry);
+        }
+        catch (IOException e) {
+            System.err.println("Could not save score: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a score to the top scores of its level if it is high enough. The list is replaced rather than changed,
+     * so other threads can read it without locking.
+     * @param entry the score to add
+     */
+    private void index(ScoreEntry entry) {
+        List<ScoreEntry> current = top.getOrDefault(entry.level, Collections.emptyList());
+        if (current.size() >= topCount && current.get(current.size()-1).score >= entry.score) {
+            return;
+        }
+
+        ArrayList<ScoreEntry> updated = new ArrayList<>(current);
+        int i = 0;
+        while (i < updated.size() && updated.get(i).score >= entry.score) {
+            i++;
+        }
+        updated.add(i, entry);
+        if (updated.size() > topCount) {
+            updated.remove(updated.size()-1);
+        }
+        top.put(entry.level, Collections.unmodifiableList(updated));
+    }
+
+    /**
+     * Gets the highest scores of a level, highest first.
+     * @param level the index of the level, or TOTAL for whole games
+     * @return the top scores
+     */
+    public List<ScoreEntry> getTop(int level) {
+        return top.getOrDefault(level, Collections.emptyList());
+    }
+
+    /**
+     * Gets the number of scores written to the file so far.
+     * @return the number of scores
+     */
+    public long getRecords() {
+        return records - 1;
+    }
+
+    /**
+     * Waits for pending scores and replays to be written, flushes the file to disk and closes it. If the writer
+     * does not finish in time it is interrupted, and the file is only closed once the writer has stopped, so a
+     * record is never written to a closed file.
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+                if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                    System.err.println("Could not close score file: the writer did not stop");
+                    return;
+                }
+            }
+            chunk.force();
+            channel.close();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e) {
+            System.err.println("Could not close score file: " + e.getMessage());
+        }
+    }
+}
+
+
+class ScoreEntry {
+
+    public final int level;
+    public final float score;
+    public final long replayId;
+    public final int replayStart;
+    public final int replayEnd;
+    public final int durationTicks;
+    public final long timestamp;
+
+    /**
+     * Constructor that sets all the details of a recorded score.
+     * @param level the index of the level, or -1 for a whole game
+     * @param score the score
+     * @param replayId the seed of the replay of the game, or NO_REPLAY if there is none
+     * @param replayStart the tick of the replay the score started being gained on
+     * @param replayEnd the tick of the replay the score was reached after
+     * @param durationTicks the number of ticks taken
+     * @param timestamp the time the score was recorded in milliseconds since the epoch
+     */
+    public ScoreEntry(int level, float score, long replayId, int replayStart, int replayEnd, int durationTicks, long timestamp) {
+        this.level = level;
+        this.score = score;
+        this.replayId = replayId;
+        this.replayStart = replayStart;
+        this.replayEnd = replayEnd;
+        this.durationTicks = durationTicks;
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,281 @@
+package inkball;
+
+import processing.core.PVector;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+public class SoakTest {
+
+    static final int SAMPLE_TICKS = 60 * App.FPS; //Ticks between samples (one minute of play)
+    private static final int MAX_LINES = 8; //Lines a player keeps on the board at most, erasing before drawing more
+    private static final int MIN_SAMPLES = 30; //Samples after the warm-up needed before trends are judged
+    private static final double WARMUP = 0.2; //Part of the samples ignored while the JVM warms up and caches fill
+    private static final String[] METRICS = {"heap MB", "frame p99 ms", "lines", "balls", "queued balls", "sprites",
+        "scheduled tasks", "replay events"};
+    private static final double[] LIMITS = {1, 1, 2, 2, 2, 0.5, 2, 500}; //Most growth allowed per hour of play
+    private static final double[] MIN_RISE = {1, 2, 3, 3, 3, 1, 3, 1000}; //Growth over the run too small to count as a trend
+
+    private Game game;
+    private InputQueue input;
+    private RenderTarget target; //Draws every frame with the window's code, or null to only run the game
+    private ScoreStore scores;
+    private SpectatorServer spectator; //Streams every tick, though nothing watches it
+    private Random random;
+    private MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private ArrayList<double[]> samples = new ArrayList<>();
+    private long[] frameNanos = new long[SAMPLE_TICKS];
+
+    //Input being sent
+    private int strokeLeft = 0; //Frames left of the line being drawn
+    private float strokeX;
+    private float strokeY;
+    private int pauseLeft = 0; //Frames left until the game is unpaused
+    private int endedFor = 0; //Frames since the level was lost or the game ended
+
+    /**
+     * Constructor that sets up a soak test, which plays the game for hours with random input and watches for
+     * anything that keeps growing. The input draws, erases, pauses and restarts like a restless player. The game
+     * is set up as the window sets it up, recording a replay, saving scores and streaming to spectators.
+     * @param config the configuration to play
+     * @param seed the seed of the game and of the input
+     * @param render whether to draw every frame offscreen as the window would, which also checks the drawing
+     *               code but runs far slower
+     * @param directory the directory to save the scores and replays in
+     */
+    public SoakTest(Config config, long seed, boolean render, File directory) throws IOException {
+        this.random = new Random(seed);
+        this.game = new Game(config, seed);
+        this.game.flightEvents = false;
+        game.recorder = new Replay(game.seed, game.currentLevel);
+        scores = new ScoreStore(new File(directory, "scores.dat"), new File(directory, "replays"), App.TOP_SCORES);
+        game.scoreStore = scores;
+        spectator = new SpectatorServer(0);
+
+        if (render) {
+            target = new RenderTarget();
+            target.game = game;
+            target.hud = new Hud(target);
+            target.scores = scores;
+            target.spectator = spectator; //Published to by the window's drawing code
+            input = target.input;
+        }
+        else {
+            input = new InputQueue();
+        }
+        game.resetGame();
+    }
+
+    /**
+     * Plays the game for a number of ticks, sampling every minute of play.
+     * @param ticks the number of ticks to play
+     */
+    public void run(long ticks) {
+        for (long tick = 0; tick < ticks; tick++) {
+            randomInput();
+
+            long start = System.nanoTime();
+            if (target != null) {
+                target.g.beginDraw();
+                target.draw();
+                target.g.endDraw();
+            }
+            else {
+                input.drain(game);
+                game.tick();
+                spectator.publish(game);
+            }
+            frameNanos[(int) (tick % SAMPLE_TICKS)] = System.nanoTime() - start;
+
+            if ((tick+1) % SAMPLE_TICKS == 0) {
+                sample();
+            }
+        }
+    }
+
+    /**
+     * Saves the replay of the game being played and closes the score file and the spectator stream.
+     */
+    public void close() {
+        game.saveUnfinishedReplay();
+        scores.close();
+        spectator.close();
+    }
+
+    /**
+     * Queues the input for one frame.
+     */
+    private void randomInput() {
+        //Restart a few seconds after the level is lost or the game has ended
+        if ((game.gameEnded || (game.levelEnded && game.time == 0)) && ++endedFor > 3 * App.FPS) {
+            input.offer(InputQueue.RESTART, 0, 0);
+            endedFor = 0;
+            return;
+        }
+
+        if (pauseLeft > 0 && --pauseLeft == 0) {
+            input.offer(InputQueue.PAUSE, 0, 0);
+            return;
+        }
+
+        //Keep dragging the line being drawn in a random walk, then let go
+        if (strokeLeft > 0) {
+            strokeX = clamp(strokeX + random.nextInt(41) - 20, 0, App.WIDTH-1);
+            strokeY = clamp(strokeY + random.nextInt(41) - 20, App.TOPBAR, App.HEIGHT-1);
+            input.offer(--strokeLeft > 0 ? InputQueue.DRAG_LINE : InputQueue.END_LINE, strokeX, strokeY);
+            return;
+        }
+
+        int roll = random.nextInt(9000);
+        if (roll < 200 && game.lines.size() < MAX_LINES) {
+            strokeLeft = 10 + random.nextInt(30);
+            strokeX = random.nextInt(App.WIDTH);
+            strokeY = App.TOPBAR + random.nextInt(App.HEIGHT - App.TOPBAR);
+            input.offer(InputQueue.BEGIN_LINE, strokeX, strokeY);
+        }
+        else if (roll < 300 && !game.lines.isEmpty()) {
+            Line line = game.lines.get(random.nextInt(game.lines.size()));
+            if (!line.points.isEmpty()) {
+                PVector point = line.points.get(random.nextInt(line.points.size()));
+                input.offer(InputQueue.ERASE_LINE, point.x, point.y);
+            }
+        }
+        else if (roll < 305 && !game.paused) {
+            pauseLeft = 1 + random.nextInt(2 * App.FPS);
+            input.offer(InputQueue.PAUSE, 0, 0);
+        }
+        else if (roll == 305) {
+            input.offer(InputQueue.RESTART, 0, 0);
+        }
+    }
+
+    /**
+     * Keeps a value within a range.
+     * @param value the value
+     * @param min the lowest value allowed
+     * @param max the highest value allowed
+     * @return the value, moved into the range if outside it
+     */
+    private static float clamp(float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Records the heap in use after a full collection, the slowest frames since the last sample and the size of
+     * every collection that could leak. The replay only holds the game being played, so it should fall back each
+     * time a new game starts.
+     */
+    private void sample() {
+        System.gc();
+        long[] sorted = frameNanos.clone();
+        Arrays.sort(sorted);
+
+        samples.add(new double[] {
+            memory.getHeapMemoryUsage().getUsed() / 1e6,
+            sorted[(int) (sorted.length * 0.99)] / 1e6,
+            game.lines.size(),
+            game.balls.size(),
+            game.remainingBalls.size(),
+            target != null ? target.getSpriteCount() : 0,
+            game.scheduler.getPending() + game.playScheduler.getPending(),
+            game.recorder.getEvents()
+        });
+    }
+
+    /**
+     * Fits a straight line to each metric over the samples after the warm-up and checks how fast it grows.
+     * Trends are only judged over at least half an hour of play, since frame times and the number of balls and
+     * lines swing too much over shorter runs.
+     * @return the metrics growing faster than allowed, or an empty list if none are
+     */
+    public ArrayList<String> check() {
+        ArrayList<String> failures = new ArrayList<>();
+        int from = (int) (samples.size() * WARMUP);
+        int n = samples.size() - from;
+        if (n < 2) {
+            return failures;
+        }
+        double hours = n * SAMPLE_TICKS / (double) App.FPS / 3600;
+
+        for (int metric = 0; metric < METRICS.length; metric++) {
+            double slope = slope(from, metric) * 3600.0 * App.FPS / SAMPLE_TICKS; //Per hour of play
+            double rise = slope * hours;
+            System.out.println(String.format("  %-16s first %8.2f  last %8.2f  trend %+8.2f/h", METRICS[metric],
+                samples.get(from)[metric], samples.get(samples.size()-1)[metric], slope));
+            if (n >= MIN_SAMPLES && slope > LIMITS[metric] && rise > MIN_RISE[metric]) {
+                failures.add(String.format("%s grew by %.2f per hour (limit %.2f)", METRICS[metric], slope, LIMITS[metric]));
+            }
+        }
+        if (n < MIN_SAMPLES) {
+            System.out.println("  Too short to judge trends, which needs " + MIN_SAMPLES + " minutes of play after the warm-up");
+        }
+        return failures;
+    }
+
+    /**
+     * Gets the slope of the least squares line through one metric.
+     * @param from the first sample to use
+     * @param metric the metric
+     * @return the change per sample
+     */
+    private double slope(int from, int metric) {
+        int n = samples.size() - from;
+        double meanX = (n - 1) / 2.0;
+        double meanY = 0;
+        for (int i = from; i < samples.size(); i++) {
+            meanY += samples.get(i)[metric] / n;
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            covariance += (i - meanX) * (samples.get(from + i)[metric] - meanY);
+            variance += (i - meanX) * (i - meanX);
+        }
+        return covariance / variance;
+    }
+
+    public int getSamples() {
+        return this.samples.size();
+    }
+
+    /**
+     * Runs a soak test and exits with status 1 if anything grew faster than allowed. Arguments are the
+     * configuration file, the hours of play, whether to draw every frame and the seed. Scores and replays are
+     * saved in a new temporary directory.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        Config config = Config.load(args.length > 0 ? args[0] : "config.json");
+        double hours = args.length > 1 ? Double.parseDouble(args[1]) : 4;
+        boolean render = args.length > 2 && Boolean.parseBoolean(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        File directory = Files.createTempDirectory("inkball-soak").toFile();
+        SoakTest soak = new SoakTest(config, seed, render, directory);
+        long start = System.nanoTime();
+        soak.run((long) (hours * 3600 * App.FPS));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        soak.close();
+
+        System.out.println(String.format("Played %.1f hours in %.0fs (%s), %d samples", hours, seconds,
+            render ? "drawing every frame" : "game only", soak.getSamples()));
+        String[] replays = new File(directory, "replays").list();
+        System.out.println(String.format("Saved %d scores and %d replays in %s", soak.scores.getRecords(),
+            replays != null ? replays.length : 0, directory));
+        ArrayList<String> failures = soak.check();
+        if (!failures.isEmpty()) {
+            for (String failure : failures) {
+                System.out.println("FAIL: " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+}
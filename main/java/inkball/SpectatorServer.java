@@ -0,0 +1,406 @@
+package inkball;
+
+import processing.core.PVector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class SpectatorServer {
+
+    public static final byte KEYFRAME = 1;
+    public static final byte DELTA = 2;
+    public static final int ABSOLUTE = 1; //Ball flag for a position sent in full rather than as a change
+    public static final int COLOUR = 2; //Ball flag for a colour that changed
+    public static final int SIZE = 4; //Ball flag for a size that changed
+    public static final int POSITION_SCALE = 8; //Positions are sent in eighths of a pixel
+    public static final int SIZE_SCALE = 4; //Sizes are sent in quarters of a pixel
+    private static final int KEYFRAME_INTERVAL = 300; //Ticks between keyframes (10 seconds)
+    private static final int BACKLOG = 64; //Frames waiting to be sent before frames are dropped
+
+    private ServerSocketChannel server;
+    private ArrayBlockingQueue<byte[]> frames = new ArrayBlockingQueue<>(BACKLOG);
+    private ArrayList<SocketChannel> clients = new ArrayList<>(); //Only used by the sender thread
+    private ConcurrentLinkedQueue<SocketChannel> joining = new ConcurrentLinkedQueue<>();
+    private volatile boolean keyframeRequested = true;
+    private volatile boolean running = true;
+
+    //State last sent, used to work out what changed
+    private long tick = 0;
+    private long lastKeyframe = 0;
+    private Colours colours; //Colour table sent in the last keyframe
+    private int[] tiles = new int[0];
+    private IdentityHashMap<Ball, int[]> balls = new IdentityHashMap<>(); //Id, x, y, colour and size
+    private IdentityHashMap<Line, int[]> lines = new IdentityHashMap<>(); //Id and points sent
+    private int nextBallId = 0;
+    private int nextLineId = 0;
+    private long dropped = 0;
+
+    /**
+     * Constructor that starts a server on the loopback interface that streams the state of a game to spectator
+     * viewers. A keyframe with the whole state is sent every few seconds and whenever a viewer joins. Every other
+     * tick only the changes are sent, so a typical tick costs a few bytes per ball.
+     * @param port the port to listen on, or 0 for any free port
+     */
+    public SpectatorServer(int port) throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+        Thread acceptor = new Thread(this::accept, "spectator-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        Thread sender = new Thread(this::send, "spectator-send");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Accepts viewers until the server is closed.
+     */
+    private void accept() {
+        while (running) {
+            try {
+                SocketChannel client = server.accept();
+                client.socket().setTcpNoDelay(true);
+                joining.add(client);
+                keyframeRequested = true;
+            }
+            catch (IOException e) {
+                return; //Closed
+            }
+        }
+    }
+
+    /**
+     * Sends frames to the viewers in order. Viewers that have just joined wait for the next keyframe, since the
+     * deltas before it would not make sense to them.
+     */
+    private void send() {
+        ArrayList<SocketChannel> waiting = new ArrayList<>();
+        while (running) {
+            byte[] frame;
+            try {
+                frame = frames.take();
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+            if (!running) {
+                break;
+            }
+
+            SocketChannel client;
+            while ((client = joining.poll()) != null) {
+                waiting.add(client);
+            }
+            if (frame[4] == KEYFRAME) {
+                clients.addAll(waiting);
+                waiting.clear();
+            }
+
+            for (Iterator<SocketChannel> iterator = clients.iterator(); iterator.hasNext(); ) {
+                SocketChannel viewer = iterator.next();
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(frame);
+                    while (buffer.hasRemaining()) {
+                        viewer.write(buffer);
+                    }
+                }
+                catch (IOException e) {
+                    iterator.remove(); //The viewer has gone
+                    close(viewer);
+                }
+            }
+        }
+
+        for (SocketChannel viewer : clients) {
+            close(viewer);
+        }
+        for (SocketChannel viewer : waiting) {
+            close(viewer);
+        }
+    }
+
+    /**
+     * Encodes the changes to a game since the last tick and queues them to be sent. This is called once per tick
+     * on the game thread and never blocks. If the viewers fall behind, frames are dropped and a keyframe is sent
+     * next so they can catch up.
+     * @param game the game to stream
+     */
+    public void publish(Game game) {
+        tick++;
+        //A new colour table, such as after the config is reloaded, is only sent in keyframes
+        boolean keyframe = keyframeRequested || tick - lastKeyframe >= KEYFRAME_INTERVAL || game.config.colours != colours;
+        if (keyframe) {
+            keyframeRequested = false;
+            lastKeyframe = tick;
+        }
+
+        byte[] frame;
+        try {
+            frame = encode(game, keyframe);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); //Writing to memory does not fail
+        }
+
+        if (!frames.offer(frame)) {
+            dropped++;
+            keyframeRequested = true;
+        }
+    }
+
+    /**
+     * Encodes a frame. Each frame starts with its length so the viewer can read it in one piece. A keyframe also
+     * carries the colour table, so the viewer draws each colour number with the game's sprites.
+     * @param game the game to encode
+     * @param keyframe whether to encode the whole state rather than the changes
+     * @return the encoded frame
+     */
+    private byte[] encode(Game game, boolean keyframe) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); //Length, filled in at the end
+        out.writeByte(keyframe ? KEYFRAME : DELTA);
+        out.writeInt((int) tick);
+        out.writeFloat(game.getScore());
+        out.writeShort(game.time);
+        if (keyframe) {
+            encodeColours(out, game.config.colours);
+        }
+        encodeTiles(out, game.getBoard(), keyframe);
+        encodeBalls(out, game.balls, keyframe);
+        encodeLines(out, game.lines, keyframe);
+
+        byte[] frame = bytes.toByteArray();
+        ByteBuffer.wrap(frame).putInt(0, frame.length - 4);
+        return frame;
+    }
+
+    /**
+     * Encodes the name and sprite ending of each colour, in the order of their numbers.
+     * @param out the stream to write to
+     * @param table the colours of the game
+     */
+    private void encodeColours(DataOutputStream out, Colours table) throws IOException {
+        out.writeByte(table.size());
+        for (int i = 0; i < table.size(); i++) {
+            out.writeUTF(table.names[i]);
+            out.writeUTF(table.sprites[i]);
+        }
+        colours = table;
+    }
+
+    /**
+     * Encodes the cells of the board that changed, or every cell in a keyframe. A cell is a tile type with a
+     * colour and the number of hits of a wall.
+     * @param out the stream to write to
+     * @param board the board of the game
+     * @param keyframe whether to encode every cell
+     */
+    private void encodeTiles(DataOutputStream out, Tile[][] board, boolean keyframe) throws IOException {
+        int cols = board[0].length;
+        int[] current = new int[board.length * cols * 2];
+        for (int i = 0; i < board.length; i++) {
+            for (int i2 = 0; i2 < cols; i2++) {
+                int index = (i*cols + i2) * 2;
+                current[index] = tileCode(board[i][i2]);
+                current[index+1] = (board[i][i2] instanceof Wall ? ((Wall) board[i][i2]).hits : 0);
+            }
+        }
+
+        ArrayList<Integer> changed = new ArrayList<>();
+        for (int cell = 0; cell < current.length / 2; cell++) {
+            if (keyframe || tiles.length != current.length || current[cell*2] != tiles[cell*2] || current[cell*2+1] != tiles[cell*2+1]) {
+                changed.add(cell);
+            }
+        }
+
+        out.writeShort(board.length);
+        out.writeShort(cols);
+        out.writeShort(changed.size());
+        for (int cell : changed) {
+            out.writeShort(cell);
+            out.writeShort(current[cell*2]);
+            out.writeByte(current[cell*2+1]);
+        }
+        tiles = current;
+    }
+
+    /**
+     * Gets the code of a tile, which is its type in the low four bits and its colour in the bits above them.
+     * @param tile the tile
+     * @return the code
+     */
+    public static int tileCode(Tile tile) {
+        if (tile == null) {
+            return 0; //Covered by a hole
+        }
+        if (tile instanceof Wall) {
+            return 4 | ((Wall) tile).getColour() << 4;
+        }
+        if (tile instanceof Hole) {
+            return 3 | ((Hole) tile).getColour() << 4;
+        }
+        if (tile instanceof Spawner) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * Encodes every ball on the board. Balls not listed have been removed. A ball's position is sent as the
+     * change since the last frame when it is small enough, and its colour and size only when they change.
+     * @param out the stream to write to
+     * @param current the balls on the board
+     * @param keyframe whether to send everything in full
+     */
+    private void encodeBalls(DataOutputStream out, ArrayList<Ball> current, boolean keyframe) throws IOException {
+        IdentityHashMap<Ball, int[]> next = new IdentityHashMap<>();
+        out.writeShort(current.size());
+
+        for (Ball ball : current) {
+            int x = Math.round(ball.centrePosition.x * POSITION_SCALE);
+            int y = Math.round(ball.centrePosition.y * POSITION_SCALE);
+            int colour = ball.getColour();
+            int size = Math.round(ball.getSize() * SIZE_SCALE);
+
+            int[] last = balls.get(ball);
+            if (last != null && last[5] != ball.generation) {
+                last = null; //Reused from the pool since the last frame, so it is a different ball
+            }
+            boolean isNew = last == null || keyframe;
+            if (last == null) {
+                last = new int[] {nextBallId++ & 0xffff, 0, 0, -1, -1, ball.generation};
+            }
+            int dx = x - last[1];
+            int dy = y - last[2];
+
+            int flags = 0;
+            if (isNew || dx < Byte.MIN_VALUE || dx > Byte.MAX_VALUE || dy < Byte.MIN_VALUE || dy > Byte.MAX_VALUE) {
+                flags |= ABSOLUTE;
+            }
+            if (isNew || colour != last[3]) {
+                flags |= COLOUR;
+            }
+            if (isNew || size != last[4]) {
+                flags |= SIZE;
+            }
+
+            out.writeShort(last[0]);
+            out.writeByte(flags);
+            if ((flags & ABSOLUTE) != 0) {
+                out.writeShort(x);
+                out.writeShort(y);
+            }
+            else {
+                out.writeByte(dx);
+                out.writeByte(dy);
+            }
+            if ((flags & COLOUR) != 0) {
+                out.writeByte(colour);
+            }
+            if ((flags & SIZE) != 0) {
+                out.writeByte(size);
+            }
+            next.put(ball, new int[] {last[0], x, y, colour, size, ball.generation});
+        }
+        balls = next;
+    }
+
+    /**
+     * Encodes the lines that were erased and the points added to lines since the last frame. Lines only ever
+     * gain points while being drawn, so only the new points are sent. A line reused from the pool is sent as an
+     * erased line and a new one.
+     * @param out the stream to write to
+     * @param current the lines on the board
+     * @param keyframe whether to send every line in full
+     */
+    private void encodeLines(DataOutputStream out, ArrayList<Line> current, boolean keyframe) throws IOException {
+        Set<Line> present = Collections.newSetFromMap(new IdentityHashMap<>());
+        present.addAll(current);
+
+        //Erased lines
+        ArrayList<Integer> removed = new ArrayList<>();
+        for (Iterator<Map.Entry<Line, int[]>> iterator = lines.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Line, int[]> entry = iterator.next();
+            if (!present.contains(entry.getKey()) || entry.getValue()[2] != entry.getKey().generation) {
+                removed.add(entry.getValue()[0]);
+                iterator.remove();
+            }
+        }
+        out.writeShort(keyframe ? 0 : removed.size());
+        if (!keyframe) {
+            for (int id : removed) {
+                out.writeShort(id);
+            }
+        }
+
+        //New points of each line
+        ArrayList<Line> updated = new ArrayList<>();
+        for (Line line : current) {
+            int[] sent = lines.computeIfAbsent(line, l -> new int[] {nextLineId++ & 0xffff, 0, l.generation});
+            if (keyframe) {
+                sent[1] = 0;
+            }
+            if (sent[1] < line.points.size()) {
+                updated.add(line);
+            }
+        }
+        out.writeShort(updated.size());
+        for (Line line : updated) {
+            int[] sent = lines.get(line);
+            out.writeShort(sent[0]);
+            out.writeShort(line.points.size() - sent[1]);
+            for (int i = sent[1]; i < line.points.size(); i++) {
+                PVector point = line.points.get(i);
+                out.writeShort(Math.round(point.x));
+                out.writeShort(Math.round(point.y));
+            }
+            sent[1] = line.points.size();
+        }
+    }
+
+    /**
+     * Closes a viewer's connection.
+     * @param client the connection to close
+     */
+    private static void close(SocketChannel client) {
+        try {
+            client.close();
+        }
+        catch (IOException e) {
+            //Already closed
+        }
+    }
+
+    /**
+     * Stops the server and disconnects all viewers.
+     */
+    public void close() {
+        running = false;
+        try {
+            server.close();
+        }
+        catch (IOException e) {
+            //Already closed
+        }
+        frames.offer(new byte[5]); //Wakes the sender thread so it can exit
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public long getDropped() {
+        return this.dropped;
+    }
+}
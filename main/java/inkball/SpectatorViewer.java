@@ -0,0 +1,292 @@
+package inkball;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.*;
+
+public class SpectatorViewer extends App {
+
+    private String host;
+    private int port;
+    private File directory; //Where sprites of colours beyond the original five are, or null
+
+    //Scene rebuilt from the stream, guarded by its own lock
+    private final Object scene = new Object();
+    private Tile[][] tiles = new Tile[0][0];
+    private LinkedHashMap<Integer, float[]> balls = new LinkedHashMap<>(); //x, y, colour and size
+    private LinkedHashMap<Integer, Line> lines = new LinkedHashMap<>();
+    private float score;
+    private int time;
+    private volatile boolean connected = false;
+    private Colours colours = Colours.defaults(); //Replaced by the game's colours with the first keyframe
+
+    /**
+     * Constructor that sets the spectator server to watch.
+     * @param host the host of the server
+     * @param port the port of the server
+     * @param directory the directory of the game's configuration file, where the sprites of colours beyond the
+     *                  original five are loaded from, or null
+     */
+    public SpectatorViewer(String host, int port, File directory) {
+        this.host = host;
+        this.port = port;
+        this.directory = directory;
+    }
+
+    /**
+     * Starts receiving the stream on a background thread. Sprites are loaded when first drawn.
+     */
+    @Override
+    public void setup() {
+        frameRate(FPS);
+        Thread reader = new Thread(this::receive, "spectator-receive");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Connects to the server and applies each frame to the scene, reconnecting a second after the connection is
+     * lost.
+     */
+    private void receive() {
+        while (true) {
+            try (Socket socket = new Socket(host, port)) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                connected = true;
+                while (true) {
+                    byte[] frame = new byte[in.readInt()];
+                    in.readFully(frame);
+                    apply(new DataInputStream(new ByteArrayInputStream(frame)));
+                }
+            }
+            catch (IOException e) {
+                connected = false;
+            }
+
+            try {
+                Thread.sleep(1000);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies one frame to the scene. A keyframe replaces the scene and a delta changes it.
+     * @param in the frame
+     */
+    private void apply(DataInputStream in) throws IOException {
+        synchronized (scene) {
+            boolean keyframe = in.readByte() == SpectatorServer.KEYFRAME;
+            in.readInt(); //Tick
+            score = in.readFloat();
+            time = in.readShort();
+            if (keyframe) {
+                colours = readColours(in);
+            }
+
+            //Changed tiles
+            int rows = in.readShort();
+            int cols = in.readShort();
+            if (tiles.length != rows || (rows > 0 && tiles[0].length != cols)) {
+                tiles = new Tile[rows][cols];
+            }
+            int changed = in.readShort();
+            for (int i = 0; i < changed; i++) {
+                int cell = in.readShort();
+                int code = in.readShort();
+                int hits = in.readByte();
+                tiles[cell / cols][cell % cols] = tile(cell % cols, cell / cols, code, hits);
+            }
+
+            //Balls, where any ball not listed has been removed
+            LinkedHashMap<Integer, float[]> next = new LinkedHashMap<>();
+            int count = in.readShort();
+            for (int i = 0; i < count; i++) {
+                int id = in.readShort() & 0xffff;
+                int flags = in.readByte();
+                float[] ball = keyframe ? null : balls.get(id);
+                if (ball == null) {
+                    ball = new float[4];
+                }
+                if ((flags & SpectatorServer.ABSOLUTE) != 0) {
+                    ball[0] = in.readShort();
+                    ball[1] = in.readShort();
+                }
+                else {
+                    ball[0] += in.readByte();
+                    ball[1] += in.readByte();
+                }
+                if ((flags & SpectatorServer.COLOUR) != 0) {
+                    ball[2] = in.readByte() & 0xff;
+                }
+                if ((flags & SpectatorServer.SIZE) != 0) {
+                    ball[3] = in.readByte() & 0xff;
+                }
+                next.put(id, ball);
+            }
+            balls = next;
+
+            //Erased lines, then new points of each line
+            if (keyframe) {
+                lines.clear();
+            }
+            int removed = in.readShort();
+            for (int i = 0; i < removed; i++) {
+                lines.remove(in.readShort() & 0xffff);
+            }
+            int updated = in.readShort();
+            for (int i = 0; i < updated; i++) {
+                Line line = lines.computeIfAbsent(in.readShort() & 0xffff, id -> new Line());
+                int points = in.readShort();
+                for (int i2 = 0; i2 < points; i2++) {
+                    line.addPoint(in.readShort(), in.readShort());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the colour table of a keyframe. The viewer only draws, so the scores of the colours are left at 0.
+     * @param in the frame
+     * @return the colours of the game
+     */
+    private static Colours readColours(DataInputStream in) throws IOException {
+        int count = in.readByte() & 0xff;
+        String[] names = new String[count];
+        String[] sprites = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = in.readUTF();
+            sprites[i] = in.readUTF();
+        }
+        return new Colours(names, sprites, new float[count], new float[count]);
+    }
+
+    /**
+     * Creates a tile from its code in the stream.
+     * @param col the column of the tile
+     * @param row the row of the tile
+     * @param code the type of tile in the low four bits and its colour in the bits above them
+     * @param hits the number of times a wall has been hit
+     * @return the tile, or null for a cell covered by a hole
+     */
+    private static Tile tile(int col, int row, int code, int hits) {
+        int colour = code >> 4;
+        switch (code & 0xf) {
+            case 1:
+                return new Tile(col, row);
+            case 2:
+                return new Spawner(col, row);
+            case 3:
+                return new Hole(col, row, colour);
+            case 4:
+                Wall wall = new Wall(col, row, colour);
+                wall.hits = hits;
+                return wall;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Draws the scene as it was last received, with the score and time.
+     */
+    @Override
+    public void draw() {
+        background(200,200,200);
+
+        synchronized (scene) {
+            for (Tile[] row : tiles) {
+                for (Tile tile : row) {
+                    if (tile != null) {
+                        tile.draw(this);
+                    }
+                }
+            }
+
+            for (Line line : lines.values()) {
+                line.draw(this);
+            }
+
+            for (float[] ball : balls.values()) {
+                float x = ball[0] / SpectatorServer.POSITION_SCALE;
+                float y = ball[1] / SpectatorServer.POSITION_SCALE;
+                float size = ball[3] / SpectatorServer.SIZE_SCALE;
+                PImage sprite = getSprite(colours.ballSprites[(int) ball[2]]);
+                image(sprite, x - size/2, y - size/2, size, size);
+            }
+
+            textSize(21);
+            fill(0);
+            text("Score: " + (int) score, WIDTH-135, App.TOPBAR-34);
+            text("Time: " + time, WIDTH-135, App.TOPBAR-8);
+        }
+
+        if (!connected) {
+            textSize(21);
+            fill(0);
+            text("Waiting for " + host + ":" + port, 20, App.TOPBAR-20);
+        }
+    }
+
+    /**
+     * Gets the directory of the game's configuration file, since the viewer has no game of its own.
+     * @return the directory, or null
+     */
+    @Override
+    public File getSpriteDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Gets the colours the scene is drawn with, since the viewer has no game of its own.
+     * @return the colours
+     */
+    @Override
+    public Colours getColours() {
+        return this.colours;
+    }
+
+    /**
+     * Ignores key presses, since spectators cannot play.
+     * @param event key press as an event
+     */
+    @Override
+    public void keyPressed(KeyEvent event) {
+    }
+
+    @Override
+    public void mousePressed(MouseEvent e) {
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+    }
+
+    @Override
+    public void mouseReleased(MouseEvent e) {
+    }
+
+    /**
+     * Opens a viewer window. Arguments are the port of the spectator server and optionally its host and the
+     * directory of the game's configuration file, for the sprites of any extra colours.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7000;
+        String host = args.length > 1 ? args[1] : InetAddress.getLoopbackAddress().getHostAddress();
+        File directory = args.length > 2 ? new File(args[2]) : null;
+        PApplet.runSketch(new String[] {"inkball.SpectatorViewer"}, new SpectatorViewer(host, port, directory));
+    }
+}
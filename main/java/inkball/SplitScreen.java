@@ -0,0 +1,280 @@
+package inkball;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SplitScreen extends App {
+
+    public static final int PLAYERS = 2;
+    public static final int GAP = 16; //Width of the divider between the boards
+
+    public Game[] games = new Game[PLAYERS];
+    public InputQueue[] inputs = new InputQueue[PLAYERS];
+    private Hud[] huds = new Hud[PLAYERS];
+    private Future<?>[] ticks = new Future<?>[PLAYERS];
+    private ExecutorService boardThreads;
+    private int dragging = -1; //Board the line being drawn was started on, or -1 if no line is being drawn
+
+    /**
+     * Constructor that creates a window with a board for each player side by side. Each board is a game of its
+     * own with the full rules of the configuration file, and the levels, layouts and sprites are loaded once and
+     * shared between them.
+     */
+    public SplitScreen() {
+        super();
+    }
+
+    /**
+     * Sets the size of the window to fit both boards and the divider between them.
+     */
+    @Override
+    public void settings() {
+        size(PLAYERS*WIDTH + (PLAYERS-1)*GAP, HEIGHT);
+    }
+
+    /**
+     * Loads the configuration file and the sprites once and starts the first level on every board. Both boards
+     * use the same seed, so the players are dealt the same balls from the same spawners until their play differs.
+     */
+    @Override
+    public void setup() {
+        frameRate(FPS);
+        quality = QualityGovernor.forName(System.getProperty("inkball.quality"));
+
+        Config config = Config.load(configPath);
+        long seed = new Random().nextLong();
+        for (int i = 0; i < PLAYERS; i++) {
+            games[i] = new Game(config, seed);
+            games[i].fixedPoint = Boolean.getBoolean("inkball.fixedPoint");
+            inputs[i] = new InputQueue();
+        }
+        game = games[0];
+
+        //Reload the config and layouts for every board when they are edited
+        configWatcher = new ConfigWatcher(configPath, config, reloaded -> {
+            for (Game game : games) {
+                game.setNextConfig(reloaded);
+            }
+        });
+        configWatcher.start();
+
+        loadSprites();
+        for (int i = 0; i < PLAYERS; i++) {
+            huds[i] = new Hud(this);
+            games[i].resetGame();
+        }
+
+        //Simulate each board on a thread of its own, so both boards are advanced at the same time
+        boardThreads = Executors.newFixedThreadPool(PLAYERS, runnable -> {
+            Thread thread = new Thread(runnable, "board");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the board a point of the window is over.
+     * @param x the x coordinate in the window
+     * @return the index of the board, or -1 if the point is over the divider
+     */
+    private int boardAt(float x) {
+        int board = (int) x / (WIDTH+GAP);
+        if (board >= PLAYERS || x - board*(WIDTH+GAP) >= WIDTH) {
+            return -1;
+        }
+        return board;
+    }
+
+    /**
+     * Queues a mouse event for a board, moving the point from the window onto the board. Points past the edges of
+     * the board are kept on it, so a line dragged across the divider stays on the board it was started on.
+     * @param board the index of the board
+     * @param type the type of event
+     * @param e the mouse event
+     */
+    private void offer(int board, int type, MouseEvent e) {
+        float x = Math.max(0, Math.min(WIDTH, e.getX() - board*(WIDTH+GAP)));
+        inputs[board].offer(type, x, e.getY());
+    }
+
+    /**
+     * Queues a pause of every board if spacebar is pressed, so neither player plays on while the other is paused,
+     * and a reset of the board under the mouse if 'r' is pressed.
+     * @param event key press as an event
+     */
+    @Override
+    public void keyPressed(KeyEvent event) {
+        if (event.getKey() == 'R' || event.getKey() == 'r') {
+            int board = boardAt(mouseX);
+            if (board != -1) {
+                inputs[board].offer(InputQueue.RESTART, 0, 0);
+            }
+        }
+
+        if (event.getKeyCode() == 32) {
+            for (InputQueue input : inputs) {
+                input.offer(InputQueue.PAUSE, 0, 0);
+            }
+        }
+    }
+
+    /**
+     * Starts a line on the board the mouse is over if the left button is pressed.
+     * @param e mouse click as an event
+     */
+    @Override
+    public void mousePressed(MouseEvent e) {
+        if (e.getButton() == PConstants.LEFT) {
+            dragging = boardAt(e.getX());
+            if (dragging != -1) {
+                offer(dragging, InputQueue.BEGIN_LINE, e);
+            }
+        }
+    }
+
+    /**
+     * Adds the mouse point to the line being drawn, on the board the line was started on.
+     * @param e mouse held as an event
+     */
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        if (e.getButton() == PConstants.LEFT && dragging != -1) {
+            offer(dragging, InputQueue.DRAG_LINE, e);
+        }
+    }
+
+    /**
+     * Completes the line being drawn, or removes the line under the mouse on the board it is over if it is a right
+     * click or a left click with the ctrl button held down.
+     * @param e mouse release as an event
+     */
+    @Override
+    public void mouseReleased(MouseEvent e) {
+        if (e.getButton() == PConstants.LEFT && !e.isControlDown()) {
+            if (dragging != -1) {
+                offer(dragging, InputQueue.END_LINE, e);
+            }
+        }
+        else if (e.getButton() == PConstants.RIGHT || (e.getButton() == PConstants.LEFT && e.isControlDown())) {
+            int board = boardAt(e.getX());
+            if (board != -1) {
+                offer(board, InputQueue.ERASE_LINE, e);
+            }
+        }
+        dragging = -1;
+    }
+
+    /**
+     * Draws every board and advances each by one tick. Each board is handed to its own thread to be advanced as
+     * soon as it has been drawn, while the next board is drawn on this thread. Drawing waits for every board to
+     * finish its tick before the top bars are drawn, so nothing is drawn while its game is changing and no board
+     * gets ahead of the other.
+     */
+    @Override
+    public void draw() {
+        FrameEvent frameEvent = new FrameEvent();
+        frameEvent.begin();
+        quality.apply(g);
+        long frameStart = System.nanoTime();
+
+        background(200,200,200);
+        int inputEvents = 0;
+        for (int i = 0; i < PLAYERS; i++) {
+            inputEvents += inputs[i].drain(games[i]); //Apply the input received since the last frame
+            select(i);
+            pushMatrix();
+            translate(i*(WIDTH+GAP), 0);
+            drawElements();
+            popMatrix();
+            ticks[i] = boardThreads.submit(games[i]::tick);
+        }
+
+        //Draw the divider while the boards are advanced
+        noStroke();
+        fill(40);
+        for (int i = 1; i < PLAYERS; i++) {
+            rect(i*(WIDTH+GAP)-GAP, 0, GAP, HEIGHT);
+        }
+
+        long tickStart = System.nanoTime();
+        for (Future<?> tick : ticks) {
+            await(tick);
+        }
+        long tickTime = System.nanoTime() - tickStart;
+
+        for (int i = 0; i < PLAYERS; i++) {
+            select(i);
+            pushMatrix();
+            translate(i*(WIDTH+GAP), 0);
+            drawTopBar();
+            popMatrix();
+        }
+        quality.record(System.nanoTime() - frameStart);
+
+        frameEvent.end();
+        if (frameEvent.shouldCommit()) {
+            frameEvent.frame = frameCount;
+            frameEvent.inputEvents = inputEvents;
+            frameEvent.tickTime = tickTime;
+            for (Game game : games) {
+                frameEvent.balls += game.balls.size();
+                frameEvent.lines += game.lines.size();
+            }
+            frameEvent.paused = games[0].paused;
+            frameEvent.quality = QualityGovernor.NAMES[quality.getLevel()];
+            frameEvent.commit();
+        }
+    }
+
+    /**
+     * Makes a board the one drawn by the drawing methods of the window.
+     * @param board the index of the board
+     */
+    private void select(int board) {
+        game = games[board];
+        hud = huds[board];
+    }
+
+    /**
+     * Waits for a board to finish its tick. An error in the tick is thrown again here, as it would be if the
+     * board was advanced on this thread.
+     * @param tick the tick of the board
+     */
+    private static void await(Future<?> tick) {
+        try {
+            tick.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops watching the config and the threads advancing the boards when the window is closed.
+     */
+    @Override
+    public void dispose() {
+        if (boardThreads != null) {
+            boardThreads.shutdownNow();
+        }
+        super.dispose();
+    }
+
+    public static void main(String[] args) {
+        PApplet.main("inkball.SplitScreen");
+    }
+}
@@ -0,0 +1,468 @@
+package inkball;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public class StressBenchmark {
+
+    static final double BUDGET_MILLIS = 1000.0 / App.FPS; //Time a frame may take at the full frame rate
+    private static final int LEVEL_TIME = 600; //Long enough that no scenario runs out of time while measured
+
+    private Config base;
+    private File directory;
+    private double budgetMillis;
+    private int ticks;
+
+    /**
+     * Constructor that sets up the stress scenarios. Each scenario is written as a config.json and level1.txt in
+     * a directory of its own, exactly as a level designer would write one, and is then loaded and played through
+     * the window's whole drawing and game code offscreen.
+     * @param base the configuration the score values are copied from
+     * @param directory the directory to write the scenarios to
+     * @param budgetMillis the time each frame must fit in
+     * @param ticks the number of frames to measure in each scenario
+     */
+    public StressBenchmark(Config base, File directory, double budgetMillis, int ticks) {
+        this.base = base;
+        this.directory = directory;
+        this.budgetMillis = budgetMillis;
+        this.ticks = ticks;
+    }
+
+    /**
+     * Gets every scenario, each made to stress a different part of a frame.
+     * @param colours the colours of the base configuration, which the balls, holes and walls are given
+     * @return the scenarios
+     */
+    static List<Scenario> scenarios(Colours colours) {
+        return Arrays.asList(
+            new Scenario("maze", "walls on almost every cell, so every ball is checked against many wall rectangles",
+                maze(new Random(1), colours), colours(40, 1, colours), 1, 0),
+            new Scenario("balls", "over a hundred balls on the board from the start, more spawning every second and one hole to leave by",
+                balls(colours), colours(200, 2, colours), 1, 0),
+            new Scenario("ink", "lines drawn all over the board every few frames, so balls keep hitting and erasing them",
+                open(colours), colours(60, 3, colours), 1, 2),
+            new Scenario("holes", "a grid of holes with balls between them, so most balls are being pulled into a hole",
+                holes(colours), colours(120, 4, colours), 1, 0)
+        );
+    }
+
+    /**
+     * Writes, loads and plays each scenario and reports its frame times.
+     * @param scenarios the scenarios to run
+     * @return the results, one for each scenario
+     */
+    public List<ScenarioResult> run(List<Scenario> scenarios) throws IOException {
+        ArrayList<ScenarioResult> results = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            File scenarioDirectory = new File(directory, scenario.name);
+            Level level = new Level("level1.txt", LEVEL_TIME, scenario.spawnInterval, 1, 1, scenario.balls);
+            level.layoutLines = scenario.layout;
+            LevelGenerator.write(scenarioDirectory, Collections.singletonList(level), base);
+
+            Config config = Config.load(new File(scenarioDirectory, "config.json").getPath());
+            results.add(run(scenario, config));
+        }
+        return results;
+    }
+
+    /**
+     * Plays one scenario, timing each frame from the start of App.draw() to the end. The first seconds are played
+     * unmeasured so the JIT has compiled the frame before it is timed.
+     * @param scenario the scenario
+     * @param config the configuration written for it
+     * @return the frame times
+     */
+    private ScenarioResult run(Scenario scenario, Config config) {
+        RenderTarget target = new RenderTarget();
+        target.game = new Game(config, 0);
+        target.game.flightEvents = false;
+        target.hud = new Hud(target);
+        target.quality = new QualityGovernor(QualityGovernor.HIGH); //Budgets are for full detail
+        target.game.resetGame();
+        Scribble scribble = new Scribble(new Random(0));
+        int idle = 0; //Frames since the last line was finished
+
+        int warmup = 5 * App.FPS;
+        long[] frames = new long[ticks];
+        int peakBalls = 0;
+        int peakLines = 0;
+        for (int tick = -warmup; tick < ticks; tick++) {
+            if (scenario.inkEvery > 0 && (scribble.isDrawing() || ++idle > scenario.inkEvery)) {
+                scribble.next(target.input);
+                idle = 0;
+            }
+
+            long start = System.nanoTime();
+            target.g.beginDraw();
+            target.draw();
+            target.g.endDraw();
+            long elapsed = System.nanoTime() - start;
+
+            if (tick >= 0) {
+                frames[tick] = elapsed;
+                peakBalls = Math.max(peakBalls, target.game.balls.size());
+                peakLines = Math.max(peakLines, target.game.lines.size());
+            }
+        }
+        return new ScenarioResult(scenario, frames, budgetMillis, peakBalls, peakLines);
+    }
+
+    /**
+     * Creates an empty board with grey walls around the edge.
+     * @return the cells of the board
+     */
+    private static char[][] border() {
+        char[][] cells = new char[Game.ROWS][Game.COLS];
+        for (int i = 0; i < Game.ROWS; i++) {
+            for (int i2 = 0; i2 < Game.COLS; i2++) {
+                boolean edge = i == 0 || i2 == 0 || i == Game.ROWS-1 || i2 == Game.COLS-1;
+                cells[i][i2] = edge ? 'X' : ' ';
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Puts a hole on the board.
+     * @param cells the cells of the board
+     * @param row the top row of the hole
+     * @param col the left column of the hole
+     * @param colour the colour of the hole
+     */
+    private static void hole(char[][] cells, int row, int col, int colour) {
+        cells[row][col] = 'H';
+        cells[row][col+1] = Colours.toChar(colour);
+        cells[row+1][col] = ' ';
+        cells[row+1][col+1] = ' ';
+    }
+
+    /**
+     * Gets the character of a coloured wall, cycling through every colour but the first.
+     * @param colours the colours
+     * @param index which coloured wall to get
+     * @return the character, or X for a grey wall if there are no other colours
+     */
+    private static char wall(Colours colours, int index) {
+        if (colours.size() == 1) {
+            return 'X';
+        }
+        return Colours.toChar(1 + index % (colours.size() - 1));
+    }
+
+    /**
+     * Creates a maze with passages one cell wide carved out of coloured walls, with spawners and holes in rooms
+     * cleared along it.
+     * @param random the random number generator
+     * @param colours the colours
+     * @return the layout
+     */
+    private static String[] maze(Random random, Colours colours) {
+        char[][] cells = new char[Game.ROWS][Game.COLS];
+        for (char[] row : cells) {
+            Arrays.fill(row, 'X');
+        }
+
+        //Carve passages between the cells with odd coordinates with a depth-first search
+        ArrayDeque<int[]> stack = new ArrayDeque<>();
+        cells[1][1] = ' ';
+        stack.push(new int[] {1, 1});
+        int[][] steps = {{0, 2}, {2, 0}, {0, -2}, {-2, 0}};
+        while (!stack.isEmpty()) {
+            int[] cell = stack.peek();
+            ArrayList<int[]> next = new ArrayList<>();
+            for (int[] step : steps) {
+                int row = cell[0] + step[0];
+                int col = cell[1] + step[1];
+                if (row > 0 && col > 0 && row < Game.ROWS-1 && col < Game.COLS-1 && cells[row][col] == 'X') {
+                    next.add(new int[] {row, col});
+                }
+            }
+            if (next.isEmpty()) {
+                stack.pop();
+                continue;
+            }
+            int[] chosen = next.get(random.nextInt(next.size()));
+            cells[(cell[0] + chosen[0]) / 2][(cell[1] + chosen[1]) / 2] = ' ';
+            cells[chosen[0]][chosen[1]] = ' ';
+            stack.push(chosen);
+        }
+
+        //Colour most of the inside walls
+        for (int i = 1; i < Game.ROWS-1; i++) {
+            for (int i2 = 1; i2 < Game.COLS-1; i2++) {
+                if (cells[i][i2] == 'X' && random.nextInt(3) > 0 && colours.size() > 1) {
+                    cells[i][i2] = wall(colours, random.nextInt(colours.size() - 1));
+                }
+            }
+        }
+
+        //Clear rooms for the spawners and holes
+        int[][] rooms = {{1, 1}, {1, 14}, {14, 1}, {14, 14}, {7, 7}};
+        for (int r = 0; r < rooms.length; r++) {
+            for (int i = 0; i < 3; i++) {
+                for (int i2 = 0; i2 < 3; i2++) {
+                    cells[rooms[r][0] + i][rooms[r][1] + i2] = ' ';
+                }
+            }
+        }
+        cells[8][8] = 'S';
+        cells[2][2] = 'S';
+        hole(cells, 1, 14, 0);
+        hole(cells, 14, 1, 1 % colours.size());
+        hole(cells, 14, 14, 2 % colours.size());
+        return toLayout(cells);
+    }
+
+    /**
+     * Creates an open board with a ball in every other cell of every row below the spawners, and a single hole in
+     * a corner so balls build up faster than they are captured.
+     * @param colours the colours
+     * @return the layout
+     */
+    private static String[] balls(Colours colours) {
+        char[][] cells = border();
+        hole(cells, 1, 1, 0);
+        for (int i = 3; i < Game.ROWS-1; i++) {
+            for (int i2 = 1; i2 + 1 < Game.COLS-1; i2 += 2) {
+                cells[i][i2] = 'B';
+                cells[i][i2+1] = Colours.toChar((i + i2) % colours.size());
+            }
+        }
+        for (int i2 = 4; i2 < Game.COLS-4; i2 += 4) {
+            cells[1][i2] = 'S';
+        }
+        return toLayout(cells);
+    }
+
+    /**
+     * Creates an open board with a few walls, two spawners and four holes, left mostly empty for ink.
+     * @param colours the colours
+     * @return the layout
+     */
+    private static String[] open(Colours colours) {
+        char[][] cells = border();
+        hole(cells, 3, 3, 0);
+        hole(cells, 3, Game.COLS-5, 1 % colours.size());
+        hole(cells, Game.ROWS-5, 3, 2 % colours.size());
+        hole(cells, Game.ROWS-5, Game.COLS-5, 3 % colours.size());
+        cells[Game.ROWS/2][Game.COLS/2] = 'S';
+        cells[2][Game.COLS/2] = 'S';
+        for (int i2 = 6; i2 < Game.COLS-6; i2++) {
+            cells[Game.ROWS/2 + 3][i2] = wall(colours, i2);
+        }
+        return toLayout(cells);
+    }
+
+    /**
+     * Creates a board covered in a grid of holes of every colour, with balls and spawners in the gaps.
+     * @param colours the colours
+     * @return the layout
+     */
+    private static String[] holes(Colours colours) {
+        char[][] cells = border();
+        int colour = 0;
+        for (int i = 1; i + 1 < Game.ROWS-1; i += 3) {
+            for (int i2 = 1; i2 + 1 < Game.COLS-1; i2 += 3) {
+                hole(cells, i, i2, colour++ % colours.size());
+                if (i + 2 < Game.ROWS-1 && i2 + 2 < Game.COLS-1) {
+                    cells[i+2][i2] = 'B';
+                    cells[i+2][i2+1] = Colours.toChar(colour % colours.size());
+                    cells[i][i2+2] = (i2 / 3) % 2 == 0 ? 'S' : ' ';
+                }
+            }
+        }
+        return toLayout(cells);
+    }
+
+    /**
+     * Turns the cells of a board into the lines of a layout file.
+     * @param cells the cells of the board
+     * @return the lines
+     */
+    private static String[] toLayout(char[][] cells) {
+        String[] lines = new String[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            lines[i] = new String(cells[i]);
+        }
+        return lines;
+    }
+
+    /**
+     * Creates a queue of ball colours cycling through every colour.
+     * @param count the number of balls
+     * @param offset the colour to start from
+     * @param colours the colours to cycle through
+     * @return the colours
+     */
+    private static int[] colours(int count, int offset, Colours colours) {
+        int[] balls = new int[count];
+        for (int i = 0; i < count; i++) {
+            balls[i] = (i + offset) % colours.size();
+        }
+        return balls;
+    }
+
+    /**
+     * Runs every stress scenario and exits with status 1 if any scenario's 99th percentile frame time is over the
+     * budget. Arguments are the base configuration, the directory to write the scenarios to, the number of
+     * seconds to measure each scenario for and the budget in milliseconds.
+     * @param args command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        Config base = Config.load(args.length > 0 ? args[0] : "config.json");
+        File directory = new File(args.length > 1 ? args[1] : "stress");
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        double budget = args.length > 3 ? Double.parseDouble(args[3]) : BUDGET_MILLIS;
+
+        StressBenchmark benchmark = new StressBenchmark(base, directory, budget, seconds * App.FPS);
+        List<Scenario> scenarios = scenarios(base.colours);
+        for (Scenario scenario : scenarios) {
+            System.out.println(scenario.name + ": " + scenario.description);
+        }
+        boolean passed = true;
+        System.out.println(String.format("%-8s %8s %8s %8s %6s %6s %6s  %s", "scenario", "p50 ms", "p99 ms", "max ms",
+            "over", "balls", "lines", "budget " + String.format("%.1fms", budget)));
+        for (ScenarioResult result : benchmark.run(scenarios)) {
+            System.out.println(result);
+            passed &= result.withinBudget();
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}
+
+
+class Scenario {
+
+    final String name;
+    final String description;
+    final String[] layout;
+    final int[] balls;
+    final int spawnInterval;
+    final int inkEvery; //Frames between one line across the board being finished and the next begun, or 0 to draw none
+
+    /**
+     * Constructor that sets up a stress scenario.
+     * @param name the name of the scenario, also the name of its directory
+     * @param description what the scenario stresses
+     * @param layout the lines of its layout file
+     * @param balls the colours of the balls queued to spawn
+     * @param spawnInterval the seconds between spawns
+     * @param inkEvery the frames between one line across the board being finished and the next begun, or 0 to
+     *                 draw none
+     */
+    public Scenario(String name, String description, String[] layout, int[] balls, int spawnInterval, int inkEvery) {
+        this.name = name;
+        this.description = description;
+        this.layout = layout;
+        this.balls = balls;
+        this.spawnInterval = spawnInterval;
+        this.inkEvery = inkEvery;
+    }
+}
+
+
+class Scribble {
+
+    private static final int POINTS = 12; //Points dragged through after the first
+
+    private Random random;
+    private int point = -1; //Points of the line queued so far, or -1 when no line is being drawn
+    private float x;
+    private float y;
+
+    /**
+     * Constructor that creates a player scribbling long zigzag lines across the board.
+     * @param random the random number generator
+     */
+    public Scribble(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Queues the next point of the line being drawn, starting a new line if none is. Points are queued one a
+     * frame as the mouse would send them, since drags queued in the same frame are merged into one.
+     * @param input the input queue of the game
+     */
+    public void next(InputQueue input) {
+        if (point < 0) {
+            x = 40 + random.nextInt(App.WIDTH - 80);
+            y = App.TOPBAR + 40 + random.nextInt(App.HEIGHT - App.TOPBAR - 80);
+            input.offer(InputQueue.BEGIN_LINE, x, y);
+            point = 0;
+        }
+        else if (point < POINTS) {
+            x = Math.max(0, Math.min(App.WIDTH-1, x + random.nextInt(121) - 60));
+            y = Math.max(App.TOPBAR, Math.min(App.HEIGHT-1, y + random.nextInt(121) - 60));
+            input.offer(InputQueue.DRAG_LINE, x, y);
+            point++;
+        }
+        else {
+            input.offer(InputQueue.END_LINE, x, y);
+            point = -1;
+        }
+    }
+
+    public boolean isDrawing() {
+        return this.point >= 0;
+    }
+}
+
+
+class ScenarioResult {
+
+    final Scenario scenario;
+    final double p50;
+    final double p99;
+    final double max;
+    final int over; //Frames over the budget
+    final double budget;
+    final int peakBalls;
+    final int peakLines;
+
+    /**
+     * Constructor that summarises the frame times of a scenario.
+     * @param scenario the scenario
+     * @param frames the time each frame took in nanoseconds
+     * @param budget the time each frame must fit in, in milliseconds
+     * @param peakBalls the most balls on the board at once
+     * @param peakLines the most lines on the board at once
+     */
+    public ScenarioResult(Scenario scenario, long[] frames, double budget, int peakBalls, int peakLines) {
+        this.scenario = scenario;
+        this.budget = budget;
+        this.peakBalls = peakBalls;
+        this.peakLines = peakLines;
+
+        long[] sorted = frames.clone();
+        Arrays.sort(sorted);
+        this.p50 = sorted[sorted.length / 2] / 1e6;
+        this.p99 = sorted[Math.min(sorted.length-1, (int) (sorted.length * 0.99))] / 1e6;
+        this.max = sorted[sorted.length-1] / 1e6;
+        int over = 0;
+        for (long frame : frames) {
+            if (frame / 1e6 > budget) {
+                over++;
+            }
+        }
+        this.over = over;
+    }
+
+    /**
+     * Checks if the scenario kept to its budget, allowing the slowest 1% of frames to miss it.
+     * @return true if the 99th percentile frame time is within the budget
+     */
+    public boolean withinBudget() {
+        return p99 <= budget;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-8s %8.2f %8.2f %8.2f %6d %6d %6d  %s", scenario.name, p50, p99, max, over, peakBalls,
+            peakLines, withinBudget() ? "ok" : "OVER BUDGET");
+    }
+}
@@ -54,6 +54,26 @@ class Wall extends Tile {
         this.colour = colour;
     }
 
+    /**
+     * Moves the wall to another cell of the board.
+     * @param col the column to move to
+     * @param row the row to move to
+     */
+    public void moveTo(int col, int row) {
+        this.x = col*App.CELLSIZE;
+        this.y = row*App.CELLSIZE+App.TOPBAR;
+    }
+
+    /**
+     * Creates a copy of the wall with the same damage.
+     * @return the copy
+     */
+    public Wall copy() {
+        Wall wall = new Wall(getCol(), getRow(), this.colour);
+        wall.hits = this.hits;
+        return wall;
+    }
+
     /**
      * Draws the relevant wall image based on the colour of the wall and how damaged it is.
      * @param app an object of the App class
@@ -62,10 +82,10 @@ class Wall extends Tile {
     public void draw(App app) {
         PImage tile;
         if (hits==2) {
-            tile = app.getSprite("broken"+String.valueOf(colour));
+            tile = app.getSprite(app.getColours().brokenSprites[colour]);
         }
         else {
-            tile = app.getSprite("wall"+String.valueOf(colour));
+            tile = app.getSprite(app.getColours().wallSprites[colour]);
         }
         app.image(tile, x, y);
     }
@@ -100,6 +120,14 @@ class Wall extends Tile {
     public double getBottom() {
         return y + size; //Returns the bottom y coordinate of the wall
     }
+
+    public int getCol() {
+        return x / App.CELLSIZE; //Returns the column of the wall on the board
+    }
+
+    public int getRow() {
+        return (y - App.TOPBAR) / App.CELLSIZE; //Returns the row of the wall on the board
+    }
 }
 
 
@@ -149,7 +177,7 @@ class Hole extends Tile {
      */
     @Override
     public void draw(App app) {
-        PImage tile = app.getSprite("hole"+String.valueOf(colour));
+        PImage tile = app.getSprite(app.getColours().holeSprites[colour]);
         app.image(tile, x*App.CELLSIZE, y*App.CELLSIZE+App.TOPBAR);
     }
 
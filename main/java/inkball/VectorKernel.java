@@ -0,0 +1,115 @@
+package inkball;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorKernel implements BatchKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final float SPEED = 2/(float) App.FPS;
+
+    private ScalarKernel tail = new ScalarKernel();
+
+    /**
+     * Constructor that checks the Vector API can be used, so a missing module is detected when the kernel is
+     * chosen rather than in the middle of a simulation.
+     */
+    public VectorKernel() {
+        FloatVector.zero(SPECIES);
+    }
+
+    /**
+     * Moves the balls a full vector of lanes at a time. Lanes do the same float operations in the same order as
+     * the scalar kernel, so results are bit-identical. Balls left over after the last full vector use the
+     * scalar kernel, as they do for the boundary and wall checks.
+     * @param batch the balls to move
+     * @param steps the number of ticks to move by
+     */
+    @Override
+    public void integrate(BallBatch batch, int steps) {
+        int bound = SPECIES.loopBound(batch.count);
+        FloatVector speed = FloatVector.broadcast(SPECIES, SPEED);
+        FloatVector backwards = FloatVector.broadcast(SPECIES, -SPEED);
+        FloatVector normal = FloatVector.broadcast(SPECIES, 24);
+
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            //Restore normal speed and size before moving
+            FloatVector vx = FloatVector.fromArray(SPECIES, batch.vx, i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, batch.vy, i);
+            vx = speed.blend(backwards, vx.compare(VectorOperators.LT, 0));
+            vy = speed.blend(backwards, vy.compare(VectorOperators.LT, 0));
+
+            FloatVector x = FloatVector.fromArray(SPECIES, batch.x, i);
+            FloatVector y = FloatVector.fromArray(SPECIES, batch.y, i);
+            for (int step = 0; step < steps; step++) {
+                x = x.add(vx);
+                y = y.add(vy);
+            }
+            x.intoArray(batch.x, i);
+            y.intoArray(batch.y, i);
+            vx.intoArray(batch.vx, i);
+            vy.intoArray(batch.vy, i);
+            normal.intoArray(batch.size, i);
+        }
+        tail.integrate(batch, bound, steps);
+    }
+
+    @Override
+    public void reflectBoundaries(BallBatch batch, boolean[] collided) {
+        int bound = SPECIES.loopBound(batch.count);
+
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            FloatVector radius = FloatVector.fromArray(SPECIES, batch.size, i).div(2);
+            FloatVector cx = FloatVector.fromArray(SPECIES, batch.x, i).mul(App.CELLSIZE).add(radius);
+            FloatVector cy = FloatVector.fromArray(SPECIES, batch.y, i).mul(App.CELLSIZE).add(App.TOPBAR).add(radius);
+
+            //Reflect across vertical and horizontal boundaries
+            VectorMask<Float> hitX = cx.sub(radius).compare(VectorOperators.LE, 0)
+                .or(cx.add(radius).compare(VectorOperators.GE, App.WIDTH));
+            VectorMask<Float> hitY = cy.add(radius).compare(VectorOperators.GE, App.HEIGHT)
+                .or(cy.sub(radius).compare(VectorOperators.LE, App.TOPBAR));
+
+            FloatVector vx = FloatVector.fromArray(SPECIES, batch.vx, i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, batch.vy, i);
+            vx.lanewise(VectorOperators.NEG, hitX).intoArray(batch.vx, i);
+            vy.lanewise(VectorOperators.NEG, hitY).intoArray(batch.vy, i);
+
+            hitX.or(hitY).intoArray(collided, i);
+        }
+
+        tail.reflectBoundaries(batch, bound, collided);
+    }
+
+    @Override
+    public int wallContacts(BallBatch batch, WallRect rect, boolean[] touching) {
+        float left = (float) rect.getLeft();
+        float right = (float) rect.getRight();
+        float top = (float) rect.getTop();
+        float bottom = (float) rect.getBottom();
+        int bound = SPECIES.loopBound(batch.count);
+        int contacts = 0;
+
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            FloatVector radius = FloatVector.fromArray(SPECIES, batch.size, i).div(2);
+            FloatVector cx = FloatVector.fromArray(SPECIES, batch.x, i).mul(App.CELLSIZE).add(radius);
+            FloatVector cy = FloatVector.fromArray(SPECIES, batch.y, i).mul(App.CELLSIZE).add(App.TOPBAR).add(radius);
+
+            //Distance from the closest point on the rectangle now and after moving
+            FloatVector distanceX = cx.sub(cx.min(right).max(left));
+            FloatVector distanceY = cy.sub(cy.min(bottom).max(top));
+            FloatVector futureDistanceX = distanceX.add(FloatVector.fromArray(SPECIES, batch.vx, i));
+            FloatVector futureDistanceY = distanceY.add(FloatVector.fromArray(SPECIES, batch.vy, i));
+            FloatVector distanceSquared = distanceX.mul(distanceX).add(distanceY.mul(distanceY));
+            FloatVector futureDistanceSquared = futureDistanceX.mul(futureDistanceX).add(futureDistanceY.mul(futureDistanceY));
+
+            VectorMask<Float> hit = distanceSquared.compare(VectorOperators.LE, radius.mul(radius))
+                .and(futureDistanceSquared.compare(VectorOperators.LE, distanceSquared));
+            hit.intoArray(touching, i);
+            contacts += hit.trueCount();
+        }
+
+        return contacts + tail.wallContacts(batch, bound, rect, touching);
+    }
+}
@@ -0,0 +1,221 @@
+package inkball;
+
+import processing.core.PVector;
+import java.util.*;
+
+public class WallGrid {
+
+    private Wall[][] cells;
+    private WallRect[][] owners;
+    private ArrayList<WallRect> rects = new ArrayList<>();
+
+    /**
+     * Constructor that creates an empty grid of wall cells with the same dimensions as the board.
+     * @param rows the number of rows on the board
+     * @param cols the number of columns on the board
+     */
+    public WallGrid(int rows, int cols) {
+        cells = new Wall[rows][cols];
+        owners = new WallRect[rows][cols];
+    }
+
+    /**
+     * Places a wall in its cell of the grid. The collision rectangles are only rebuilt when build() is called.
+     * @param wall the wall to add
+     */
+    public void add(Wall wall) {
+        cells[wall.getRow()][wall.getCol()] = wall;
+    }
+
+    /**
+     * Merges all the walls in the grid into as few rectangles as possible.
+     */
+    public void build() {
+        rects.clear();
+        for (WallRect[] row : owners) {
+            Arrays.fill(row, null);
+        }
+        merge(0, 0, cells.length, cells[0].length);
+    }
+
+    /**
+     * Removes a destroyed wall from the grid and splits the rectangle it belonged to into smaller
+     * rectangles made up of the remaining walls.
+     * @param wall the wall to remove
+     */
+    public void remove(Wall wall) {
+        int row = wall.getRow();
+        int col = wall.getCol();
+        WallRect rect = owners[row][col];
+        cells[row][col] = null;
+        owners[row][col] = null;
+
+        if (rect != null) {
+            //Release every cell of the old rectangle and merge only that area again
+            rects.remove(rect);
+            for (int i = rect.row; i < rect.row + rect.rows; i++) {
+                for (int i2 = rect.col; i2 < rect.col + rect.cols; i2++) {
+                    owners[i][i2] = null;
+                }
+            }
+            merge(rect.row, rect.col, rect.rows, rect.cols);
+        }
+    }
+
+    /**
+     * Greedily merges walls of the same colour within an area of the grid. Each rectangle is grown as far
+     * right as possible first and then as far down as possible while every cell in the next row matches.
+     * @param row the top row of the area
+     * @param col the left column of the area
+     * @param rows the number of rows in the area
+     * @param cols the number of columns in the area
+     */
+    private void merge(int row, int col, int rows, int cols) {
+        for (int i = row; i < row + rows; i++) {
+            for (int i2 = col; i2 < col + cols; i2++) {
+                Wall wall = cells[i][i2];
+                if (wall == null || owners[i][i2] != null) {
+                    continue;
+                }
+
+                //Extend to the right
+                int colour = wall.getColour();
+                int width = 1;
+                while (i2 + width < col + cols && isFree(i, i2 + width, colour)) {
+                    width++;
+                }
+
+                //Extend downwards while the whole run below matches
+                int height = 1;
+                boolean extend = true;
+                while (extend && i + height < row + rows) {
+                    for (int i3 = i2; i3 < i2 + width; i3++) {
+                        if (!isFree(i + height, i3, colour)) {
+                            extend = false;
+                            break;
+                        }
+                    }
+                    if (extend) {
+                        height++;
+                    }
+                }
+
+                WallRect rect = new WallRect(this, i, i2, height, width, colour);
+                rects.add(rect);
+                for (int i3 = i; i3 < i + height; i3++) {
+                    for (int i4 = i2; i4 < i2 + width; i4++) {
+                        owners[i3][i4] = rect;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if a cell holds a wall of a given colour that is not yet part of a rectangle.
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @param colour the colour the wall needs to be
+     * @return true if it can be merged, false otherwise
+     */
+    private boolean isFree(int row, int col, int colour) {
+        Wall wall = cells[row][col];
+        return wall != null && owners[row][col] == null && wall.getColour() == colour;
+    }
+
+    /**
+     * Creates a copy of the grid with the same rectangles, using copies of the walls so that damaging a wall in
+     * one grid does not affect the other.
+     * @param copies the copy of each wall in this grid
+     * @return the copy
+     */
+    public WallGrid copy(Map<Wall, Wall> copies) {
+        WallGrid grid = new WallGrid(cells.length, cells[0].length);
+        for (int i = 0; i < cells.length; i++) {
+            for (int i2 = 0; i2 < cells[i].length; i2++) {
+                grid.cells[i][i2] = cells[i][i2] != null ? copies.get(cells[i][i2]) : null;
+            }
+        }
+
+        //Keep the rectangles in the same order, since collisions are checked in that order
+        for (WallRect rect : rects) {
+            WallRect copy = new WallRect(grid, rect.row, rect.col, rect.rows, rect.cols, rect.getColour());
+            grid.rects.add(copy);
+            for (int i = rect.row; i < rect.row + rect.rows; i++) {
+                for (int i2 = rect.col; i2 < rect.col + rect.cols; i2++) {
+                    grid.owners[i][i2] = copy;
+                }
+            }
+        }
+        return grid;
+    }
+
+    public Wall getWall(int row, int col) {
+        return cells[row][col];
+    }
+
+    public ArrayList<WallRect> getRects() {
+        return rects;
+    }
+}
+
+
+class WallRect {
+
+    private WallGrid grid;
+    public final int row;
+    public final int col;
+    public final int rows;
+    public final int cols;
+    private int colour;
+
+    /**
+     * Constructor that sets the cells covered by a merged rectangle of walls.
+     * @param grid the grid the rectangle belongs to
+     * @param row the top row of the rectangle
+     * @param col the left column of the rectangle
+     * @param rows the number of rows the rectangle covers
+     * @param cols the number of columns the rectangle covers
+     * @param colour the colour shared by all walls in the rectangle
+     */
+    public WallRect(WallGrid grid, int row, int col, int rows, int cols, int colour) {
+        this.grid = grid;
+        this.row = row;
+        this.col = col;
+        this.rows = rows;
+        this.cols = cols;
+        this.colour = colour;
+    }
+
+    /**
+     * Finds the wall cell closest to a point, which is the cell that was hit when a ball at that point collides
+     * with the rectangle. Clamping gives the same cell before and after the ball is pushed out of the rectangle.
+     * @param point the centre of the ball
+     * @return the wall closest to the point
+     */
+    public Wall wallAt(PVector point) {
+        int hitCol = (int) ((Math.max(getLeft(), Math.min(getRight(), point.x)) - getLeft()) / App.CELLSIZE);
+        int hitRow = (int) ((Math.max(getTop(), Math.min(getBottom(), point.y)) - getTop()) / App.CELLSIZE);
+        return grid.getWall(row + Math.min(hitRow, rows-1), col + Math.min(hitCol, cols-1));
+    }
+
+    public int getColour() {
+        return this.colour;
+    }
+
+    public double getLeft() {
+        return col * App.CELLSIZE; //Returns the left x coordinate of the rectangle
+    }
+
+    public double getRight() {
+        return (col + cols) * App.CELLSIZE; //Returns the right x coordinate of the rectangle
+    }
+
+    public double getTop() {
+        return row * App.CELLSIZE + App.TOPBAR; //Returns the top y coordinate of the rectangle
+    }
+
+    public double getBottom() {
+        return (row + rows) * App.CELLSIZE + App.TOPBAR; //Returns the bottom y coordinate of the rectangle
+    }
+}
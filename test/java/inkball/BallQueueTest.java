@@ -0,0 +1,86 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BallQueueTest {
+
+    @Test
+    public void keepsOrderWhenWrappingAroundTheRing() {
+        BallQueue queue = new BallQueue(4);
+        ArrayDeque<Integer> expected = new ArrayDeque<>();
+
+        //Keep the queue between 2 and 4 balls so the front and back keep passing the end of the ring
+        int next = 0;
+        for (int round = 0; round < 50; round++) {
+            while (queue.size() < 4) {
+                queue.enqueue(next);
+                expected.add(next);
+                next++;
+            }
+            Integer[] order = expected.toArray(new Integer[0]);
+            for (int i = 0; i < queue.size(); i++) {
+                assertEquals((int) order[i], queue.peek(i));
+            }
+            assertEquals((int) expected.poll(), queue.dequeue());
+            assertEquals((int) expected.poll(), queue.dequeue());
+        }
+    }
+
+    @Test
+    public void growsWhileWrappedWithoutLosingOrder() {
+        BallQueue queue = new BallQueue(4);
+        queue.enqueueAll(new int[] {0, 1, 2, 3});
+        queue.dequeue();
+        queue.dequeue();
+        queue.enqueueAll(new int[] {4, 5}); //Full, with the back wrapped to the start of the ring
+        queue.enqueueAll(new int[] {6, 7, 8}); //Grows
+
+        assertEquals(7, queue.size());
+        for (int colour = 2; colour <= 8; colour++) {
+            assertEquals(colour, queue.dequeue());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void copiesAWrappedQueueInOrder() {
+        BallQueue queue = new BallQueue(4);
+        queue.enqueueAll(new int[] {0, 1, 2});
+        queue.dequeue();
+        queue.dequeue();
+        queue.enqueueAll(new int[] {3, 4, 5});
+
+        BallQueue copy = queue.copy(null);
+        queue.dequeue();
+        assertEquals(4, copy.size());
+        for (int colour = 2; colour <= 5; colour++) {
+            assertEquals(colour, copy.dequeue());
+        }
+    }
+
+    @Test
+    public void refillsFromItsSource() {
+        BallQueue queue = new BallQueue(4);
+        int[] next = {0};
+        queue.setSource(() -> next[0]++);
+
+        for (int colour = 0; colour < 100; colour++) {
+            assertEquals(colour, queue.dequeue());
+            assertTrue(queue.size() >= 6);
+        }
+        assertTrue(queue.size() <= 8, "the ring grew past what the display needs");
+    }
+
+    @Test
+    public void rejectsDequeueAndPeekPastTheEnd() {
+        BallQueue queue = new BallQueue();
+        assertThrows(IllegalStateException.class, queue::dequeue);
+        queue.enqueue(1);
+        assertThrows(IndexOutOfBoundsException.class, () -> queue.peek(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> queue.peek(-1));
+    }
+}
@@ -0,0 +1,147 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventSimulatorTest {
+
+    //Inputs as {tick, type, x, y}: a pause, a line drawn across the board, erased and drawn again
+    private static final float[][] INPUTS = {
+        {300, InputQueue.PAUSE, 0, 0},
+        {420, InputQueue.PAUSE, 0, 0},
+        {600, InputQueue.BEGIN_LINE, 64, 320},
+        {601, InputQueue.DRAG_LINE, 250, 330},
+        {602, InputQueue.DRAG_LINE, 450, 340},
+        {603, InputQueue.END_LINE, 512, 340},
+        {1200, InputQueue.ERASE_LINE, 250, 330},
+        {1500, InputQueue.BEGIN_LINE, 100, 200},
+        {1501, InputQueue.END_LINE, 300, 500},
+        {1502, InputQueue.BEGIN_LINE, 400, 200},
+        {1503, InputQueue.DRAG_LINE, 420, 350},
+        {2000, InputQueue.DRAG_LINE, 440, 500},
+        {2001, InputQueue.END_LINE, 460, 600},
+    };
+    private static final int TICKS = 5400;
+
+    /**
+     * Describes everything in a game that the simulation could get wrong, with positions compared bit for bit.
+     * @param game the game
+     * @return the state of the game
+     */
+    private static String state(Game game) {
+        StringBuilder state = new StringBuilder();
+        state.append(game.getScore()).append(' ').append(game.time).append(' ').append(game.levelEnded)
+            .append(' ').append(game.remainingBalls.size()).append(' ').append(game.lines.size()).append(';');
+        for (Ball ball : game.balls) {
+            state.append(Float.floatToIntBits(ball.centrePosition.x)).append(',')
+                .append(Float.floatToIntBits(ball.centrePosition.y)).append(',')
+                .append(ball.getColour()).append(';');
+        }
+        return state.toString();
+    }
+
+    /**
+     * Plays a level by stepping every tick and by the event-driven simulation with the same seed and inputs, and
+     * checks both games are the same after each input and at the end.
+     * @param level the level
+     * @param seed the seed
+     * @param fixedPoint whether the games use fixed point physics
+     */
+    private static void assertSame(int level, long seed, boolean fixedPoint) {
+        Config config = Config.load("config.json");
+        Game stepped = new Game(config, seed);
+        Game skipped = new Game(config, seed);
+        for (Game game : new Game[] {stepped, skipped}) {
+            game.currentLevel = level;
+            game.fixedPoint = fixedPoint;
+            game.resetGame();
+        }
+        EventSimulator simulator = new EventSimulator(skipped);
+
+        int tick = 0;
+        for (float[] input : INPUTS) {
+            int until = (int) input[0];
+            int simulated = tick + simulator.run(until - tick);
+            while (tick < until && !stepped.levelEnded) {
+                stepped.tick();
+                tick++;
+            }
+            assertEquals(tick, simulated, "level " + level + " seed " + seed + " ticks simulated");
+            assertEquals(state(stepped), state(skipped), "level " + level + " seed " + seed + " tick " + tick);
+            if (stepped.levelEnded) {
+                return;
+            }
+            stepped.apply((int) input[1], input[2], input[3]);
+            skipped.apply((int) input[1], input[2], input[3]);
+        }
+
+        simulator.run(TICKS - tick);
+        while (tick < TICKS && !stepped.levelEnded) {
+            stepped.tick();
+            tick++;
+        }
+        assertEquals(state(stepped), state(skipped), "level " + level + " seed " + seed + " at the end");
+    }
+
+    @Test
+    public void skippingMatchesStepping() {
+        for (int level = 0; level < 3; level++) {
+            for (long seed = 0; seed < 8; seed++) {
+                assertSame(level, seed, false);
+            }
+        }
+    }
+
+    @Test
+    public void skippingMatchesSteppingInFixedPoint() {
+        for (int level = 0; level < 3; level++) {
+            for (long seed = 0; seed < 4; seed++) {
+                assertSame(level, seed, true);
+            }
+        }
+    }
+
+    @Test
+    public void skipsMostTicksOfAnEmptyBoard() {
+        Game game = new Game(Config.load("config.json"), 1);
+        game.resetGame();
+        EventSimulator simulator = new EventSimulator(game);
+        int ticks = simulator.run(600);
+
+        assertEquals(ticks, simulator.getFullTicks() + simulator.getSkippedTicks());
+        assertTrue(simulator.getSkippedTicks() > 0, "no ticks were skipped");
+    }
+
+    @Test
+    public void runsTheCountdownWithoutStoppingForIt() {
+        Game game = new Game(Config.load("config.json"), 1);
+        game.resetGame();
+        game.time = 3;
+        game.remainingBalls.setSource(null);
+        while (!game.remainingBalls.isEmpty()) {
+            game.remainingBalls.dequeue(); //Nothing spawns, so only the countdown and the ball's bounces are left to run
+        }
+
+        EventSimulator simulator = new EventSimulator(game);
+        int ticks = simulator.run(10 * App.FPS);
+        assertTrue(game.levelEnded);
+        assertEquals(0, game.time);
+        assertEquals(3 * App.FPS, ticks);
+        assertTrue(simulator.getFullTicks() < ticks / 5, simulator.getFullTicks() + " of " + ticks + " ticks were run in full");
+    }
+
+    @Test
+    public void winsALevelWithNothingLeftToCaptureOnTheNextTick() {
+        Game game = new Game(Config.load("config.json"), 1);
+        game.resetGame();
+        game.balls.clear();
+        game.remainingBalls.setSource(null);
+        while (!game.remainingBalls.isEmpty()) {
+            game.remainingBalls.dequeue();
+        }
+
+        assertEquals(1, new EventSimulator(game).run(100));
+        assertTrue(game.levelEnded);
+    }
+}
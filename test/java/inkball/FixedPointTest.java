@@ -0,0 +1,111 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FixedPointTest {
+
+    private static final double STEP = 1.0 / FixedPoint.ONE;
+
+    @Test
+    public void arithmeticAgreesWithDoublesToOneStep() {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            double a = (random.nextDouble() - 0.5) * 1000;
+            double b = (random.nextDouble() - 0.5) * 1000;
+            long fa = FixedPoint.fromFloat(a);
+            long fb = FixedPoint.fromFloat(b);
+            double ra = (double) fa / FixedPoint.ONE;
+            double rb = (double) fb / FixedPoint.ONE;
+
+            assertEquals(a, ra, STEP / 2);
+            assertEquals(ra * rb, (double) FixedPoint.mul(fa, fb) / FixedPoint.ONE, STEP);
+            if (Math.abs(rb) > 1) {
+                assertEquals(ra / rb, (double) FixedPoint.div(fa, fb) / FixedPoint.ONE, STEP);
+            }
+            assertEquals((float) ra, FixedPoint.toFloat(fa));
+        }
+    }
+
+    @Test
+    public void squareRootIsExactForSquaresAndRoundsDown() {
+        for (long n = 0; n < 100000; n++) {
+            long root = FixedPoint.sqrt(n * n);
+            assertEquals(n, root);
+            if (n > 0) {
+                assertEquals(n - 1, FixedPoint.sqrt(n * n - 1));
+            }
+        }
+
+        //The root of a squared fixed point number is the number again
+        long x = FixedPoint.fromFloat(17.25);
+        assertEquals(x, FixedPoint.sqrt(x * x));
+    }
+
+    @Test
+    public void ballsMoveAndBounceLikeFloatBalls() {
+        Ball floating = new Ball(3, 4, 1);
+        Ball fixed = new Ball(3, 4, 1);
+        floating.setVelocity(2, -2);
+        fixed.setVelocity(2, -2);
+        fixed.useFixedPoint();
+
+        //Fly around the empty screen, bouncing off its edges
+        for (int tick = 0; tick < 1000; tick++) {
+            for (Ball ball : new Ball[] {floating, fixed}) {
+                ball.restoreSize();
+                ball.checkBoundaryCollision();
+                ball.update();
+            }
+            assertEquals(floating.centrePosition.x, fixed.centrePosition.x, 0.01, "x at tick " + tick);
+            assertEquals(floating.centrePosition.y, fixed.centrePosition.y, 0.01, "y at tick " + tick);
+            assertEquals(Math.signum(floating.getVelocity().x), Math.signum(fixed.getVelocity().x));
+            assertEquals(Math.signum(floating.getVelocity().y), Math.signum(fixed.getVelocity().y));
+        }
+    }
+
+    @Test
+    public void replaysOfFixedPointGamesPlayBackBitForBit() throws IOException {
+        Config config = Config.load("config.json");
+        Game game = new Game(config, 3);
+        game.fixedPoint = true;
+        game.recorder = new Replay(game.seed, game.currentLevel);
+        game.recorder.fixedPoint = true;
+        game.resetGame();
+
+        for (int tick = 0; tick < 2000; tick++) {
+            if (tick == 150) {
+                game.apply(InputQueue.BEGIN_LINE, 80, 400);
+                game.apply(InputQueue.DRAG_LINE, 300, 380);
+                game.apply(InputQueue.END_LINE, 500, 420);
+            }
+            if (tick == 900) {
+                game.apply(InputQueue.ERASE_LINE, 300, 380);
+            }
+            game.tick();
+        }
+
+        //Save and load the replay as a file would
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        game.recorder.write(new DataOutputStream(bytes));
+        Replay replay = Replay.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertTrue(replay.fixedPoint);
+
+        assertFalse(game.balls.isEmpty());
+        Game replayed = replay.play(config);
+        assertEquals(game.getScore(), replayed.getScore());
+        assertEquals(game.time, replayed.time);
+        assertEquals(game.balls.size(), replayed.balls.size());
+        for (int i = 0; i < game.balls.size(); i++) {
+            Ball ball = game.balls.get(i);
+            Ball other = replayed.balls.get(i);
+            assertTrue(other.isFixedPoint());
+            assertEquals(Float.floatToIntBits(ball.centrePosition.x), Float.floatToIntBits(other.centrePosition.x));
+            assertEquals(Float.floatToIntBits(ball.centrePosition.y), Float.floatToIntBits(other.centrePosition.y));
+        }
+    }
+}
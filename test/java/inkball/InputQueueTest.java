@@ -0,0 +1,137 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InputQueueTest {
+
+    /**
+     * A game that only keeps the events applied to it, as "type x y".
+     */
+    private static class Events extends Game {
+
+        List<String> applied = new ArrayList<>();
+
+        Events() {
+            super(null, 0);
+        }
+
+        @Override
+        public void apply(int type, float x, float y) {
+            applied.add(type + " " + (int) x + " " + (int) y);
+        }
+    }
+
+    @Test
+    public void appliesEventsInOrderAcrossWraparound() {
+        InputQueue queue = new InputQueue(8);
+        Events game = new Events();
+        List<String> expected = new ArrayList<>();
+
+        //Five events a tick through eight slots, so the ring wraps most ticks
+        for (int tick = 0; tick < 40; tick++) {
+            for (int i = 0; i < 5; i++) {
+                int n = tick * 5 + i;
+                assertTrue(queue.offer(InputQueue.ERASE_LINE, n, -n));
+                expected.add(InputQueue.ERASE_LINE + " " + n + " " + -n);
+            }
+            assertEquals(5, queue.size());
+            assertEquals(5, queue.drain(game));
+            assertEquals(0, queue.size());
+        }
+        assertEquals(expected, game.applied);
+    }
+
+    @Test
+    public void dropsEventsWhenFull() {
+        InputQueue queue = new InputQueue(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(InputQueue.PAUSE, 0, 0));
+        }
+        assertFalse(queue.offer(InputQueue.PAUSE, 0, 0));
+        assertEquals(1, queue.getDropped());
+
+        queue.drain(new Events());
+        assertTrue(queue.offer(InputQueue.PAUSE, 0, 0));
+    }
+
+    @Test
+    public void coalescesConsecutiveDrags() {
+        InputQueue queue = new InputQueue(16);
+        Events game = new Events();
+        queue.offer(InputQueue.BEGIN_LINE, 1, 1);
+        queue.offer(InputQueue.DRAG_LINE, 2, 2);
+        queue.offer(InputQueue.DRAG_LINE, 3, 3);
+        queue.offer(InputQueue.DRAG_LINE, 4, 4);
+        queue.offer(InputQueue.END_LINE, 5, 5);
+        queue.offer(InputQueue.DRAG_LINE, 6, 6);
+        queue.offer(InputQueue.PAUSE, 0, 0);
+        queue.offer(InputQueue.DRAG_LINE, 7, 7);
+
+        assertEquals(6, queue.drain(game));
+        assertEquals(List.of(InputQueue.BEGIN_LINE + " 1 1", InputQueue.DRAG_LINE + " 4 4", InputQueue.END_LINE + " 5 5",
+            InputQueue.DRAG_LINE + " 6 6", InputQueue.PAUSE + " 0 0", InputQueue.DRAG_LINE + " 7 7"), game.applied);
+    }
+
+    @Test
+    public void keepsTheLastDragOfATickForTheNextDrain() {
+        InputQueue queue = new InputQueue(16);
+        Events game = new Events();
+        queue.offer(InputQueue.DRAG_LINE, 1, 1);
+        queue.offer(InputQueue.DRAG_LINE, 2, 2);
+        queue.drain(game);
+
+        //A drag queued after the drain is not coalesced with the one already applied
+        queue.offer(InputQueue.DRAG_LINE, 3, 3);
+        queue.drain(game);
+        assertEquals(List.of(InputQueue.DRAG_LINE + " 2 2", InputQueue.DRAG_LINE + " 3 3"), game.applied);
+    }
+
+    @Test
+    public void togglesDemoModeWithoutRecordingIt() {
+        Game game = new Game(Config.load("config.json"), 0);
+        game.recorder = new Replay(game.seed, game.currentLevel);
+        game.resetGame();
+        InputQueue queue = new InputQueue(16);
+
+        queue.offer(InputQueue.DEMO, 0, 0);
+        queue.drain(game);
+        assertTrue(game.demo);
+        queue.offer(InputQueue.DEMO, 0, 0);
+        queue.offer(InputQueue.ERASE_LINE, 1, 1);
+        queue.drain(game);
+        assertFalse(game.demo);
+        assertEquals(1, game.recorder.getEvents());
+    }
+
+    @Test
+    public void passesEveryEventFromOneThreadToAnother() throws InterruptedException {
+        InputQueue queue = new InputQueue(16);
+        Events game = new Events();
+        int count = 20000;
+
+        //Both threads yield when they have nothing to do, so they take turns even on a single core
+        Thread input = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                while (!queue.offer(InputQueue.ERASE_LINE, i, 0)) {
+                    Thread.yield(); //Full, wait for the game thread to drain it
+                }
+            }
+        });
+        input.start();
+        while (game.applied.size() < count) {
+            if (queue.drain(game) == 0) {
+                Thread.yield();
+            }
+        }
+        input.join();
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(InputQueue.ERASE_LINE + " " + i + " 0", game.applied.get(i));
+        }
+    }
+}
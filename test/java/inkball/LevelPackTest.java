@@ -0,0 +1,130 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LevelPackTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void readsBackEveryLevelOfAConfig() throws IOException {
+        Config config = Config.load("config.json");
+        File file = new File(directory, "levels" + LevelPack.EXTENSION);
+        LevelPack.write(config, file);
+
+        LevelPack pack = new LevelPack(file);
+        assertEquals(config.getLevelCount(), pack.size());
+        for (int i = 0; i < pack.size(); i++) {
+            Level expected = config.getLevel(i);
+            Level level = pack.readLevel(i);
+            assertEquals(expected.layout, level.layout);
+            assertEquals(expected.time, level.time);
+            assertEquals(expected.spawnInterval, level.spawnInterval);
+            assertEquals(expected.scoreIncreaseModifier, level.scoreIncreaseModifier);
+            assertEquals(expected.scoreDecreaseModifier, level.scoreDecreaseModifier);
+            assertEquals(expected.endless, level.endless);
+            assertArrayEquals(expected.balls, level.balls);
+            assertArrayEquals(config.loadLayout(expected), level.layoutLines);
+        }
+
+        Colours colours = pack.getColours();
+        assertArrayEquals(config.colours.names, colours.names);
+        assertArrayEquals(config.colours.sprites, colours.sprites);
+        assertArrayEquals(config.colours.scoreIncrease, colours.scoreIncrease);
+        assertArrayEquals(config.colours.scoreDecrease, colours.scoreDecrease);
+        assertThrows(IndexOutOfBoundsException.class, () -> pack.readLevel(pack.size()));
+    }
+
+    @Test
+    public void loadsAPackInPlaceOfAConfig() throws IOException {
+        Config config = Config.load("config.json");
+        File file = new File(directory, "levels" + LevelPack.EXTENSION);
+        LevelPack.write(config, file);
+
+        Config packed = Config.load(file.getPath());
+        assertEquals(config.getLevelCount(), packed.getLevelCount());
+        assertArrayEquals(config.loadLayout(config.getLevel(1)), packed.loadLayout(packed.getLevel(1)));
+    }
+
+    @Test
+    public void readsAVersionOnePack() throws IOException {
+        String[] layout = {"XXXX", "XS0X", "XH1X", "XXXX"};
+        File file = new File(directory, "old" + LevelPack.EXTENSION);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x494e4b4c);
+            out.writeInt(1);
+            out.writeInt(1);
+
+            //Scores of the five original colours, with no names or sprites
+            for (int i = 0; i < 5; i++) {
+                out.writeFloat(10 + i);
+            }
+            for (int i = 0; i < 5; i++) {
+                out.writeFloat(20 + i);
+            }
+            out.writeLong(12 + 40 + 8);
+
+            out.writeInt(120);
+            out.writeInt(10);
+            out.writeFloat(1.5f);
+            out.writeFloat(0.5f);
+            out.writeByte(1);
+            writeString(out, "old.txt");
+            out.writeShort(3);
+            out.writeByte(0);
+            out.writeByte(2);
+            out.writeByte(4);
+            out.writeShort(layout.length);
+            for (String line : layout) {
+                writeString(out, line);
+            }
+        }
+
+        LevelPack pack = new LevelPack(file);
+        assertEquals(1, pack.size());
+        Colours colours = pack.getColours();
+        assertArrayEquals(Colours.DEFAULT_NAMES, colours.names);
+        assertArrayEquals(new float[] {10, 11, 12, 13, 14}, colours.scoreIncrease);
+        assertArrayEquals(new float[] {20, 21, 22, 23, 24}, colours.scoreDecrease);
+
+        Level level = pack.readLevel(0);
+        assertEquals("old.txt", level.layout);
+        assertEquals(120, level.time);
+        assertEquals(10, level.spawnInterval);
+        assertEquals(1.5f, level.scoreIncreaseModifier);
+        assertEquals(0.5f, level.scoreDecreaseModifier);
+        assertTrue(level.endless);
+        assertArrayEquals(new int[] {0, 2, 4}, level.balls);
+        assertArrayEquals(layout, level.layoutLines);
+    }
+
+    @Test
+    public void rejectsOtherFilesAndVersions() throws IOException {
+        File notPack = new File(directory, "config.json");
+        try (FileOutputStream out = new FileOutputStream(notPack)) {
+            out.write("{\"levels\": []}".getBytes(StandardCharsets.UTF_8));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new LevelPack(notPack));
+
+        File future = new File(directory, "future" + LevelPack.EXTENSION);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(future))) {
+            out.writeInt(0x494e4b4c);
+            out.writeInt(3);
+            out.writeInt(0);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new LevelPack(future));
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,85 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplayTest {
+
+    /**
+     * Draws a line across the board, as the mouse would over three ticks.
+     * @param game the game
+     * @param y the height of the line
+     */
+    private static void drawLine(Game game, float y) {
+        game.apply(InputQueue.BEGIN_LINE, 64, y);
+        game.tick();
+        game.apply(InputQueue.DRAG_LINE, 300, y + 20);
+        game.tick();
+        game.apply(InputQueue.END_LINE, 512, y);
+    }
+
+    @Test
+    public void keepsOnlyTheSeedOfEachRestart() throws IOException {
+        Config config = Config.load("config.json");
+        Game game = new Game(config, 11);
+        game.recorder = new Replay(game.seed, game.currentLevel);
+        game.resetGame();
+
+        for (int tick = 0; tick < 3000; tick++) {
+            if (tick % 400 == 100) {
+                drawLine(game, 200 + tick % 300);
+            }
+            if (tick % 1000 == 700) {
+                game.apply(InputQueue.RESTART, 0, 0);
+            }
+            game.tick();
+        }
+
+        //Restarts drop the attempts before them, so only the last restart and the input after it are left
+        assertEquals(300 + 2, game.recorder.getTicks());
+        assertEquals(1 + 3, game.recorder.getEvents());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        game.recorder.write(new DataOutputStream(bytes));
+        Replay replay = Replay.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Game replayed = replay.play(config);
+        assertEquals(game.getScore(), replayed.getScore());
+        assertEquals(game.time, replayed.time);
+        assertEquals(game.lines.size(), replayed.lines.size());
+        assertEquals(game.balls.size(), replayed.balls.size());
+        for (int i = 0; i < game.balls.size(); i++) {
+            Ball ball = game.balls.get(i);
+            Ball other = replayed.balls.get(i);
+            assertEquals(ball.getColour(), other.getColour());
+            assertEquals(Float.floatToIntBits(ball.centrePosition.x), Float.floatToIntBits(other.centrePosition.x));
+            assertEquals(Float.floatToIntBits(ball.centrePosition.y), Float.floatToIntBits(other.centrePosition.y));
+        }
+    }
+
+    @Test
+    public void restartsWithTheSameSeedPlayOutTheSame() {
+        Config config = Config.load("config.json");
+        Game first = new Game(config, 1);
+        Game second = new Game(config, 2);
+        first.resetGame();
+        second.resetGame();
+        for (int tick = 0; tick < 500; tick++) {
+            first.tick();
+        }
+        drawLine(second, 300);
+
+        //Whatever happened before, a restart with the same seed leaves the two games the same
+        first.restart(5);
+        second.restart(5);
+        for (int tick = 0; tick < 2000; tick++) {
+            first.tick();
+            second.tick();
+        }
+        assertEquals(first.getScore(), second.getScore());
+        assertEquals(first.balls.size(), second.balls.size());
+        assertEquals(first.remainingBalls.size(), second.remainingBalls.size());
+    }
+}
@@ -0,0 +1,86 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchedulerTest {
+
+    @Test
+    public void runsTasksDueManyRotationsAhead() {
+        Scheduler scheduler = new Scheduler();
+        List<Long> ran = new ArrayList<>();
+        for (int delay : new int[] {1, 63, 64, 65, 128, 200, 1000}) {
+            scheduler.schedule(delay, () -> ran.add(scheduler.getTick()));
+        }
+        assertEquals(1, scheduler.ticksUntilNext());
+
+        scheduler.advance(1000);
+        assertEquals(List.of(1L, 63L, 64L, 65L, 128L, 200L, 1000L), ran);
+        assertEquals(0, scheduler.getPending());
+        assertEquals(Integer.MAX_VALUE, scheduler.ticksUntilNext());
+    }
+
+    @Test
+    public void doesNotRunTasksSharingASlotEarly() {
+        Scheduler scheduler = new Scheduler();
+        int[] runs = new int[1];
+        ScheduledTask task = scheduler.schedule(130, () -> runs[0]++); //Shares a slot with ticks 2 and 66
+
+        scheduler.advance(129);
+        assertEquals(0, runs[0]);
+        assertEquals(1, task.remaining());
+        assertEquals(1, scheduler.ticksUntilNext());
+        scheduler.tick();
+        assertEquals(1, runs[0]);
+        assertTrue(task.isDone());
+    }
+
+    @Test
+    public void repeatsWithPeriodsLongerThanTheWheel() {
+        Scheduler scheduler = new Scheduler();
+        List<Long> ran = new ArrayList<>();
+        scheduler.scheduleRepeating(10, 100, () -> ran.add(scheduler.getTick()));
+
+        scheduler.advance(350);
+        assertEquals(List.of(10L, 110L, 210L, 310L), ran);
+        assertEquals(60, scheduler.ticksUntilNext());
+        assertEquals(1, scheduler.getPending());
+    }
+
+    @Test
+    public void runsTasksDueTogetherInTheOrderScheduled() {
+        Scheduler scheduler = new Scheduler();
+        List<Integer> ran = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int index = i;
+            scheduler.schedule(70, () -> ran.add(index));
+        }
+        scheduler.advance(70);
+        assertEquals(List.of(0, 1, 2, 3, 4), ran);
+    }
+
+    @Test
+    public void cancelledTasksDoNotRun() {
+        Scheduler scheduler = new Scheduler();
+        int[] runs = new int[2];
+        ScheduledTask first = scheduler.schedule(100, () -> runs[0]++);
+        ScheduledTask[] second = new ScheduledTask[1];
+        second[0] = scheduler.scheduleRepeating(5, 5, () -> {
+            runs[1]++;
+            if (runs[1] == 3) {
+                scheduler.cancel(second[0]); //A repeating task can cancel itself
+            }
+        });
+        scheduler.cancel(first);
+
+        scheduler.advance(200);
+        assertEquals(0, runs[0]);
+        assertEquals(3, runs[1]);
+        assertTrue(first.isDone());
+        assertEquals(0, scheduler.getPending());
+    }
+}
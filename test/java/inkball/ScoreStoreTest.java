@@ -0,0 +1,159 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScoreStoreTest {
+
+    private static final int RECORD_SIZE = 40;
+
+    @TempDir
+    File directory;
+
+    private ScoreStore open() {
+        return new ScoreStore(new File(directory, "scores.dat"), new File(directory, "replays"), 3);
+    }
+
+    @Test
+    public void keepsTheTopScoresOfEachLevelAcrossReopening() {
+        ScoreStore store = open();
+        store.record(0, 10, ScoreStore.NO_REPLAY, 0, 0, 100);
+        store.record(0, 30, ScoreStore.NO_REPLAY, 0, 0, 100);
+        store.record(0, 20, ScoreStore.NO_REPLAY, 0, 0, 100);
+        store.record(0, 5, ScoreStore.NO_REPLAY, 0, 0, 100);
+        store.record(ScoreStore.TOTAL, 50, ScoreStore.NO_REPLAY, 0, 0, 300);
+        store.close();
+
+        store = open();
+        assertEquals(5, store.getRecords());
+        assertEquals(3, store.getTop(0).size());
+        assertEquals(30, store.getTop(0).get(0).score);
+        assertEquals(10, store.getTop(0).get(2).score);
+        assertEquals(50, store.getTop(ScoreStore.TOTAL).get(0).score);
+        assertEquals(ScoreStore.NO_REPLAY, store.getTop(0).get(0).replayId);
+        store.close();
+    }
+
+    @Test
+    public void ignoresARecordWithoutItsCommitMarker() throws IOException {
+        ScoreStore store = open();
+        store.record(0, 10, ScoreStore.NO_REPLAY, 0, 0, 100);
+        store.record(0, 20, ScoreStore.NO_REPLAY, 0, 0, 100);
+        store.close();
+
+        //Write a third record as if the game crashed before its commit marker was written
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "scores.dat"), "rw")) {
+            file.seek(3 * RECORD_SIZE);
+            file.writeLong(System.currentTimeMillis());
+            file.writeLong(ScoreStore.NO_REPLAY);
+            file.writeInt(0);
+            file.writeFloat(1000);
+            file.writeInt(100);
+        }
+
+        store = open();
+        assertEquals(2, store.getRecords());
+        assertEquals(20, store.getTop(0).get(0).score);
+
+        //The next score is written over the cut off record
+        store.record(0, 15, ScoreStore.NO_REPLAY, 0, 0, 100);
+        store.close();
+        store = open();
+        assertEquals(3, store.getRecords());
+        assertEquals(20, store.getTop(0).get(0).score);
+        assertEquals(15, store.getTop(0).get(1).score);
+        store.close();
+    }
+
+    @Test
+    public void rejectsOtherVersionsOfTheScoreFile() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "scores.dat"), "rw")) {
+            file.writeInt(0x494e4b53);
+            file.writeInt(1);
+        }
+        assertThrows(IllegalArgumentException.class, this::open);
+    }
+
+    @Test
+    public void savesOneReplayPerGameAndChecksEachScoreAgainstIt() throws IOException {
+        //Two levels with no balls, each won on its first tick and scored by the time left
+        File layout = new File(directory, "empty.txt");
+        Files.write(layout.toPath(), List.of("XXXX", "X  X", "XXXX"));
+        File configFile = new File(directory, "config.json");
+        String level = "{\"layout\": \"empty.txt\", \"time\": %d, \"spawn_interval\": 10, "
+            + "\"score_increase_from_hole_capture_modifier\": 1.0, \"score_decrease_from_wrong_hole_modifier\": 1.0, \"balls\": []}";
+        String scores = "{\"grey\": 70, \"orange\": 50, \"blue\": 50, \"green\": 50, \"yellow\": 100}";
+        Files.write(configFile.toPath(), List.of("{\"levels\": [" + String.format(level, 3) + ", " + String.format(level, 5) + "], "
+            + "\"score_increase_from_hole_capture\": " + scores + ", \"score_decrease_from_wrong_hole\": " + scores + "}"));
+        Config config = Config.load(configFile.getPath());
+
+        ScoreStore store = open();
+        Game game = new Game(config, 7);
+        game.scoreStore = store;
+        game.recorder = new Replay(game.seed, game.currentLevel);
+        game.resetGame();
+        while (game.currentLevel == 0) {
+            game.tick();
+        }
+
+        //Restart the second level partway through, which drops the attempt from the replay
+        for (int i = 0; i < 4; i++) {
+            game.tick();
+        }
+        game.apply(InputQueue.RESTART, 0, 0);
+        Replay played = game.recorder;
+        assertEquals(1, played.getEvents());
+        while (!game.gameEnded) {
+            game.tick();
+        }
+        float total = game.getScore();
+
+        //A new game gets a new replay
+        game.apply(InputQueue.RESTART, 0, 0);
+        assertNotSame(played, game.recorder);
+        assertNotEquals(played.seed, game.recorder.seed);
+        store.close();
+
+        store = open();
+        assertEquals(3, store.getRecords());
+        assertEquals(1, new File(directory, "replays").list().length);
+        ScoreEntry first = store.getTop(0).get(0);
+        ScoreEntry second = store.getTop(1).get(0);
+        ScoreEntry whole = store.getTop(ScoreStore.TOTAL).get(0);
+        assertEquals(7, first.replayId);
+        assertEquals(first.replayId, whole.replayId);
+        assertEquals(first.replayEnd, second.replayStart);
+        assertEquals(total, whole.score);
+        assertEquals(total, first.score + second.score);
+
+        Replay replay = store.readReplay(whole);
+        assertEquals(played.getTicks(), replay.getTicks());
+        assertEquals(whole.replayEnd, replay.getTicks());
+        assertTrue(replay.validate(config, first.score, first.replayStart, first.replayEnd));
+        assertTrue(replay.validate(config, second.score, second.replayStart, second.replayEnd));
+        assertTrue(replay.validate(config, whole.score, whole.replayStart, whole.replayEnd));
+        assertFalse(replay.validate(config, second.score + 1, second.replayStart, second.replayEnd));
+        store.close();
+    }
+
+    @Test
+    public void dropsScoresRecordedAfterClosing() {
+        ScoreStore store = open();
+        store.record(0, 10, ScoreStore.NO_REPLAY, 0, 0, 100);
+        store.close();
+        assertDoesNotThrow(() -> store.record(0, 20, 1, 0, 100, 100));
+        assertDoesNotThrow(() -> store.saveReplay(new Replay(1, 0)));
+
+        ScoreStore reopened = open();
+        assertEquals(1, reopened.getRecords());
+        reopened.close();
+    }
+}